@@ -26,16 +26,59 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Map;
 
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.types.ContextFreeConverter;
 import com.sun.stylesheet.types.Size;
+import com.sun.stylesheet.types.TypeConverter;
 import com.sun.stylesheet.types.TypeManager;
 
 public class Declaration {
 	private String propertyName;
+	// the property's PropertyRegistry ID, looked up once rather than on 
+	// every application
+	private final int propertyId;
 	private String value;
 	private boolean important;
 	private Animation animation;
 	
+	// converted values for context-free types, along with the converters 
+	// which produced them so that re-registering a type's converter discards
+	// them;  replaced, never modified, so that a reader on another thread 
+	// always sees matching types and values
+	private transient volatile Conversions conversions;
+	
+	private static final class Conversions {
+	    final Class[] types;
+	    final TypeConverter[] converters;
+	    final Object[] values;
+	    
+	    Conversions(Class[] types, TypeConverter[] converters, 
+	            Object[] values) {
+	        this.types = types;
+	        this.converters = converters;
+	        this.values = values;
+	    }
+	}
+	
+	// true for DefaultStyleable subclasses which override 
+	// convertPropertyFromString, and so must always be asked to convert
+	private static final ClassValue<Boolean> customConversion = 
+	        new ClassValue<Boolean>() {
+	    protected Boolean computeValue(Class<?> type) {
+	        try {
+	            return Boolean.valueOf(type.getMethod(
+	                    "convertPropertyFromString", String.class, 
+	                    String.class).getDeclaringClass() != 
+	                        DefaultStyleable.class);
+	        }
+	        catch (NoSuchMethodException e) {
+	            return Boolean.TRUE;
+	        }
+	    }
+	};
+	
 	public Declaration(String propertyName, String value) {
         this(propertyName, value, false);
     }
@@ -49,6 +92,7 @@ public class Declaration {
 	public Declaration(String propertyName, String value, boolean important,
 	        Animation animation) {
 		this.propertyName = propertyName;
+		this.propertyId = PropertyRegistry.getId(propertyName);
 		this.value = value;
 		this.important = important;
 		this.animation = animation;
@@ -76,30 +120,111 @@ public class Declaration {
 	
 	
 	private Object convertValue(Styleable object) {
-        Object convertedValue = object.convertPropertyFromString(
-                propertyName, value);
+        Object convertedValue;
+        Class type = null;
+        if (object instanceof DefaultStyleable && 
+                !customConversion.get(object.getClass()).booleanValue())
+            type = ((DefaultStyleable) object).getPropertyType(propertyName);
+        if (type != null && TypeManager.isContextFree(type))
+            convertedValue = convertValue(type);
+        else {
+            convertedValue = object.convertPropertyFromString(
+                    propertyName, value);
+        }
         if (convertedValue instanceof Size)
             convertedValue = ((Size) convertedValue).computeSize(object);	
         return convertedValue;
     }
     
     
+    /** 
+     * Converts the value into the specified type, reusing the previous 
+     * conversion as long as the type's converter is the same context-free 
+     * converter which produced it.
+     */
+    private Object convertValue(Class type) {
+        TypeConverter converter = TypeManager.getTypeConverter(type);
+        Conversions current = conversions;
+        int index = -1;
+        if (current != null) {
+            for (int i = 0; i < current.types.length; i++) {
+                if (current.types[i] == type) {
+                    if (current.converters[i] == converter)
+                        return current.values[i];
+                    index = i; // converter has since been replaced
+                    break;
+                }
+            }
+        }
+        if (converter == null)
+            throw new IllegalArgumentException("unsupported type: " + type);
+        Object result = converter.convertFromString(value);
+        if (converter instanceof ContextFreeConverter) {
+            int length = current != null ? current.types.length : 0;
+            if (index == -1)
+                index = length++;
+            Class[] types = new Class[length];
+            TypeConverter[] converters = new TypeConverter[length];
+            Object[] values = new Object[length];
+            if (current != null) {
+                int count = current.types.length;
+                System.arraycopy(current.types, 0, types, 0, count);
+                System.arraycopy(current.converters, 0, converters, 0, count);
+                System.arraycopy(current.values, 0, values, 0, count);
+            }
+            types[index] = type;
+            converters[index] = converter;
+            values[index] = result;
+            conversions = new Conversions(types, converters, values);
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Returns the names of the simple properties this declaration sets on 
+     * the object, after splitting compound properties such as 
+     * <code>font</code>.
+     */
+    String[] getAffectedProperties(Styleable object) {
+        Map<String, Object> split = object.splitCompoundProperty(propertyName, 
+                convertValue(object));
+        if (split == null)
+            return new String[] { propertyName };
+        return split.keySet().toArray(new String[split.size()]);
+    }
+    
+    
     public void applyTo(final Styleable object, Rule source, 
 	        Priority priority) {
+	    applyTo(object, source, priority.getPackedValue());
+	}
+	
+	
+	/**
+	 * Applies this declaration with a priority in its packed form, as 
+	 * returned by {@link Priority#pack}.
+	 */
+	void applyTo(final Styleable object, Rule source, long priority) {
 	    Stylesheet stylesheet = source.getStylesheet();
 	    if (stylesheet != null && !stylesheet.supportsPriority())
 	        object.setProperty(propertyName, convertValue(object));
         else {
-            PropertyManager.applyProperty(object, propertyName, 
-                    convertValue(object), source, priority, animation);
+            PropertyManager.applyProperty(object, propertyId, propertyName, 
+                    convertValue(object), source, priority, animation, false);
         }
 	}
 	
 	
 	public void removeFrom(final Styleable object, Rule source, 
 	        Priority priority) {
-        PropertyManager.removeProperty(object, propertyName, 
-                convertValue(object), source, priority, animation);
+	    removeFrom(object, source, priority.getPackedValue());
+	}
+	
+	
+	void removeFrom(final Styleable object, Rule source, long priority) {
+        PropertyManager.removeProperty(object, propertyId, propertyName, 
+                convertValue(object), source, priority, animation, false);
 	}
 	
 	
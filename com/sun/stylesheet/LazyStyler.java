@@ -0,0 +1,152 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.awt.Component;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Styles the hidden subtrees skipped by {@link Stylesheet#setLazy lazy} 
+ * stylesheets once they are first shown.  Each skipped component gets a 
+ * <code>HierarchyListener</code> which waits for it to become showing and 
+ * then removes itself.  A component shown in a parent which has no 
+ * <code>Styleable</code> wrapper cannot be styled yet, and goes back to 
+ * waiting until it is next shown.
+ */
+class LazyStyler implements HierarchyListener {
+    private static final LazyStyler instance = new LazyStyler();
+    
+    /** A stylesheet application which was skipped. */
+    private static class Application {
+        final Stylesheet stylesheet;
+        final int depth;
+        
+        Application(Stylesheet stylesheet, int depth) {
+            this.stylesheet = stylesheet;
+            this.depth = depth;
+        }
+    }
+    
+    // components are compared by identity, as Component does not override 
+    // equals
+    private final Map<Component, List<Application>> skipped = 
+            new WeakHashMap<Component, List<Application>>();
+    
+    
+    private LazyStyler() {
+    }
+    
+    
+    /**
+     * Returns the component if the specified node is a component which is not 
+     * visible, and whose styling can therefore be put off.
+     */
+    static Component getHiddenComponent(Styleable node) {
+        if (node instanceof DefaultStyleable) {
+            Object object = ((DefaultStyleable) node).getBaseObject();
+            if (object instanceof Component && !((Component) object).isVisible())
+                return (Component) object;
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Remembers that a stylesheet should be applied to a component at the 
+     * given depth once the component is showing.
+     */
+    static void skip(Component component, Stylesheet stylesheet, int depth) {
+        synchronized (instance) {
+            List<Application> applications = instance.skipped.get(component);
+            if (applications == null) {
+                applications = new ArrayList<Application>();
+                instance.skipped.put(component, applications);
+                component.addHierarchyListener(instance);
+            }
+            for (Application a : applications) {
+                if (a.stylesheet == stylesheet && a.depth == depth)
+                    return;
+            }
+            applications.add(new Application(stylesheet, depth));
+        }
+    }
+    
+    
+    public void hierarchyChanged(HierarchyEvent e) {
+        if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0)
+            return;
+        Component component = e.getComponent();
+        if (!component.isShowing())
+            return;
+        List<Application> applications;
+        synchronized (this) {
+            component.removeHierarchyListener(this);
+            applications = skipped.remove(component);
+        }
+        if (applications != null)
+            style(component, applications);
+    }
+    
+    
+    private static void style(Component component, 
+            List<Application> applications) {
+        Styleable parent = component.getParent() != null ? 
+                TypeManager.getExistingStyleable(component.getParent()) : null;
+        if (!(parent instanceof DefaultStyleable)) {
+            for (Application a : applications)
+                skip(component, a.stylesheet, a.depth);
+            return;
+        }
+        Styleable node = TypeManager.getStyleable(component);
+        List<Stylesheet> applied = new ArrayList<Stylesheet>();
+        PropertyManager.beginBatch();
+        try {
+            for (Application a : applications) {
+                // the stylesheet may have been removed in the meantime
+                if (((DefaultStyleable) parent).isStyledBy(a.stylesheet, 
+                        a.depth - 1)) {
+                    a.stylesheet.applyTo(node, a.depth);
+                    applied.add(a.stylesheet);
+                }
+            }
+            PropertyManager.cascadeTo(node, true);
+        }
+        finally {
+            PropertyManager.endBatch();
+        }
+        for (Stylesheet stylesheet : applied) {
+            if (stylesheet.isStatic() && stylesheet.supportsPriority())
+                PropertyManager.makeStatic(stylesheet, node);
+        }
+    }
+}
@@ -28,10 +28,56 @@
  * Describes the priority of a property value.  When a property has multiple 
  * values with different priorities assigned to it, the highest-priority value 
  * is used.
+ * <p>
+ * The attributes of a priority can also be packed into a single 
+ * <code>long</code> (see {@link #pack}), laid out so that comparing two packed 
+ * values as numbers orders them as their attributes would be compared one by 
+ * one.  The packed form is what is stored and compared while styling, 
+ * without creating <code>Priority</code> objects at all.  To fit, each 
+ * attribute has a limited range in the packed form:  pseudoclass, ID and 
+ * style class counts -1 to 14, stylesheet priorities -128 to 127, depths -1 
+ * to 1022, Java class weights -1 to 131070 and orders -1 to {@link 
+ * #MAX_ORDER}.  <code>Priority</code> objects themselves are not limited.
+ * <p>
+ * Packing saturates:  an attribute outside of its range is stored as the 
+ * nearest value within it, and packed values are ordered as if the 
+ * priorities had been given those values.  Two priorities whose attributes 
+ * are all within range pack in the same order as {@link #compareTo} gives 
+ * them;  otherwise an attribute beyond the same end of its range in both 
+ * ties, and the next attribute decides.
  *
  *@author Ethan Nicholas
  */
 public class Priority implements Comparable<Priority>, Cloneable {
+    // packed field layout, from most to least significant;  bit 63 is always 
+    // zero so that packed values compare correctly as signed longs
+    private static final int IMPORTANT_SHIFT = 62;
+    private static final int PSEUDOCLASS_SHIFT = 58;
+    private static final int PSEUDOCLASS_BITS = 4;
+    private static final int STYLESHEET_SHIFT = 50;
+    private static final int STYLESHEET_BITS = 8;
+    private static final int DEPTH_SHIFT = 40;
+    private static final int DEPTH_BITS = 10;
+    private static final int ID_SHIFT = 36;
+    private static final int ID_BITS = 4;
+    private static final int STYLECLASS_SHIFT = 32;
+    private static final int STYLECLASS_BITS = 4;
+    private static final int JAVA_CLASS_SHIFT = 15;
+    private static final int JAVA_CLASS_BITS = 17;
+    private static final int ORDER_SHIFT = 0;
+    private static final int ORDER_BITS = 15;
+    
+    // depth is stored reversed, as lower depths are higher priority
+    private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 2;
+    
+    /** The highest order which can be packed. */
+    public static final int MAX_ORDER = (1 << ORDER_BITS) - 2;
+    
+    /** The packed form of the important flag. */
+    public static final long IMPORTANT = 1L << IMPORTANT_SHIFT;
+    
+    private static final long DEPTH_UNIT = 1L << DEPTH_SHIFT;
+    
     private boolean important;
     private int pseudoclassCount;
     private int stylesheetPriority;
@@ -62,6 +108,84 @@ public class Priority implements Comparable<Priority>, Cloneable {
     }
     
     
+    /**
+     * Constructs a <code>Priority</code> from its packed form.
+     *
+     *@param value a value returned by {@link #pack} or {@link 
+     *      #getPackedValue}
+     */
+    public Priority(long value) {
+        this((value & IMPORTANT) != 0, 
+                get(value, PSEUDOCLASS_BITS, PSEUDOCLASS_SHIFT) - 1, 
+                get(value, STYLESHEET_BITS, STYLESHEET_SHIFT) - 128, 
+                MAX_DEPTH - get(value, DEPTH_BITS, DEPTH_SHIFT), 
+                get(value, ID_BITS, ID_SHIFT) - 1, 
+                get(value, STYLECLASS_BITS, STYLECLASS_SHIFT) - 1, 
+                get(value, JAVA_CLASS_BITS, JAVA_CLASS_SHIFT) - 1, 
+                get(value, ORDER_BITS, ORDER_SHIFT) - 1);
+    }
+    
+    
+    /**
+     * Packs priority attributes into a single <code>long</code>.  Packed 
+     * values compare (as numbers) the same way as the corresponding 
+     * <code>Priority</code> objects.  Attributes outside of their ranges 
+     * saturate, as described {@link Priority above}.
+     *
+     *@see #Priority(boolean, int, int, int, int, int, int, int)
+     */
+    public static long pack(boolean important, int pseudoclassCount, 
+            int stylesheetPriority, int depth, int idCount, int styleclassCount,
+            int javaClassWeight, int order) {
+        return (important ? IMPORTANT : 0) |
+                field(pseudoclassCount + 1L, PSEUDOCLASS_BITS, 
+                        PSEUDOCLASS_SHIFT) |
+                field(stylesheetPriority + 128L, STYLESHEET_BITS, 
+                        STYLESHEET_SHIFT) |
+                field((long) MAX_DEPTH - depth, DEPTH_BITS, DEPTH_SHIFT) |
+                field(idCount + 1L, ID_BITS, ID_SHIFT) |
+                field(styleclassCount + 1L, STYLECLASS_BITS, STYLECLASS_SHIFT) |
+                field(javaClassWeight + 1L, JAVA_CLASS_BITS, JAVA_CLASS_SHIFT) |
+                field(order + 1L, ORDER_BITS, ORDER_SHIFT);
+    }
+    
+    
+    private static long field(long value, int bits, int shift) {
+        long max = (1L << bits) - 1;
+        return Math.max(0, Math.min(max, value)) << shift;
+    }
+    
+    
+    private static int get(long value, int bits, int shift) {
+        return (int) ((value >>> shift) & ((1L << bits) - 1));
+    }
+    
+    
+    /**
+     * Returns the packed form of a priority with its depth increased by one, 
+     * as used for inherited values.
+     *
+     *@param value a packed priority
+     *@return the packed priority one level deeper
+     */
+    public static long deeper(long value) {
+        return (value & (((1L << DEPTH_BITS) - 1) << DEPTH_SHIFT)) != 0 ? 
+                value - DEPTH_UNIT : value;
+    }
+    
+    
+    /**
+     * Returns the packed form of this priority.
+     *
+     *@return the packed value
+     *@see #pack
+     */
+    public long getPackedValue() {
+        return pack(important, pseudoclassCount, stylesheetPriority, depth, 
+                idCount, styleclassCount, javaClassWeight, order);
+    }
+    
+    
     public boolean isImportant() {
         return important;
     }
@@ -185,29 +309,28 @@ public class Priority implements Comparable<Priority>, Cloneable {
      *      equal, and a positive number if this priority is higher
      */
     public int compareTo(Priority p) {
-        int result = (important ? 1 : 0) - (p.important ? 1 : 0);
+        int result = Boolean.compare(important, p.important);
         if (result != 0)
             return result;
-        result = pseudoclassCount - p.pseudoclassCount;
+        result = Integer.compare(pseudoclassCount, p.pseudoclassCount);
         if (result != 0)
             return result;
-        result = stylesheetPriority - p.stylesheetPriority;
+        result = Integer.compare(stylesheetPriority, p.stylesheetPriority);
         if (result != 0)
             return result;
-        result = p.depth - depth; // note that depth order is reversed
+        result = Integer.compare(p.depth, depth); // depth order is reversed
         if (result != 0)
             return result;
-        result = idCount - p.idCount;
+        result = Integer.compare(idCount, p.idCount);
         if (result != 0)
             return result;
-        result = styleclassCount - p.styleclassCount;
+        result = Integer.compare(styleclassCount, p.styleclassCount);
         if (result != 0)
             return result;
-        result = javaClassWeight - p.javaClassWeight;
+        result = Integer.compare(javaClassWeight, p.javaClassWeight);
         if (result != 0)
             return result;
-        result = order - p.order;
-        return result;
+        return Integer.compare(order, p.order);
     }
     
     
@@ -23,15 +23,23 @@
 
 /* Modified by Volker Härtel, 8 Dec 2011 */ package com.sun.stylesheet;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.sun.stylesheet.styleable.DefaultPropertyHandler;
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.styleable.PropertyHandler;
+import com.sun.stylesheet.styleable.ValueEquality;
 import com.sun.stylesheet.types.Size;
 
 /**
@@ -46,9 +54,15 @@ import com.sun.stylesheet.types.Size;
 public class PropertyManager {
 	private static final String NO_STYLE = "no style";
 
+	/** Priority of the original, unstyled value;  lower than any rule's. */
+	private static final long NO_STYLE_PRIORITY = Priority.pack(false, -1, -1, -1, -1, -1, -1,
+			-1);
+
 	private static final boolean debug = false;
 
 	private static boolean animationSupport;
+
+	private static final AtomicLong skippedWrites = new AtomicLong();
 	static {
 		try {
 			Class.forName("org.jdesktop.animation.timing.Animator");
@@ -59,20 +73,138 @@ public class PropertyManager {
 	}
 
 	/**
-	 * Maps styleables to their property values. Property values are stored in a
-	 * Map, and each "value" is actually a list of all applicable values sorted
-	 * by priority.
+	 * Maps styleables to their property values, for styleables which cannot
+	 * hold their own {@link PropertyTable}. {@link DefaultStyleable} wrappers
+	 * store their table directly and never appear here.
 	 */
-	public static Map<Styleable, Map<String, PropertyList>> properties = new WeakHashMap<Styleable, Map<String, PropertyList>>();
+	public static Map<Styleable, PropertyTable> properties = new WeakHashMap<Styleable, PropertyTable>();
 
 	/**
-	 * Maps styleables to their pseudoclass listeners.
+	 * All values applied to a single property, kept sorted by priority. New
+	 * values are placed with a binary search rather than by re-sorting the
+	 * list, and values are found by their source without allocating a
+	 * <code>PropertyValue</code> to compare against. The highest-priority
+	 * value is always the last one. The list itself is read-only; it is only
+	 * modified through <code>insert</code> and <code>removeAt</code>.
 	 */
-	public static Map<Styleable, List<PseudoclassValue>> pseudoclasses = new WeakHashMap<Styleable, List<PseudoclassValue>>();
+	private static class PropertyList extends AbstractList<PropertyValue> {
+		private static final PropertyValue[] NO_VALUES = new PropertyValue[0];
+
+		private String property;
+
+		private PropertyValue[] values = NO_VALUES;
+
+		private int size;
 
-	private static class PropertyList extends ArrayList<PropertyValue> {
 		private boolean overridden; // true if someone has modified this
 		// property outside of CSS' control
+
+		private boolean written; // true once we have set the property
+
+		private Object writtenValue; // the value we last set
+
+		PropertyList(String property) {
+			this.property = property;
+		}
+
+		public PropertyValue get(int index) {
+			if (index >= size)
+				throw new IndexOutOfBoundsException(index + " >= " + size);
+			return values[index];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/** Returns the highest-priority value, or null if there are none. */
+		PropertyValue top() {
+			return size > 0 ? values[size - 1] : null;
+		}
+
+		/**
+		 * Inserts a value after all values of lower or equal priority, so that
+		 * among equal priorities the most recently applied value wins.
+		 */
+		void insert(PropertyValue value) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (values[mid].priority <= value.priority)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			if (size == values.length)
+				values = Arrays.copyOf(values, Math.max(4, size * 2));
+			System.arraycopy(values, low, values, low + 1, size - low);
+			values[low] = value;
+			size++;
+			modCount++;
+		}
+
+		/** Returns the index of the value applied by the source, or -1. */
+		int indexOf(Rule source) {
+			for (int i = size - 1; i >= 0; i--) {
+				if (values[i].source == source)
+					return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns the index of the value applied by the source, directly or by
+		 * inheritance as specified, or -1.
+		 */
+		int indexOf(Rule source, boolean inherited) {
+			for (int i = size - 1; i >= 0; i--) {
+				if (values[i].source == source && values[i].inherited == inherited)
+					return i;
+			}
+			return -1;
+		}
+
+		void removeAt(int index) {
+			System.arraycopy(values, index + 1, values, index, size - index - 1);
+			values[--size] = null;
+			modCount++;
+		}
+	}
+
+	/**
+	 * The property values in effect for a single styleable. Each property's
+	 * list of values, sorted by priority, is stored in a slot indexed by the
+	 * property's {@link PropertyRegistry} ID.
+	 */
+	public static class PropertyTable {
+		private static final PropertyList[] NO_SLOTS = new PropertyList[0];
+
+		private PropertyList[] slots = NO_SLOTS;
+
+		/** The pseudoclass listeners applied to the styleable, if any. */
+		private List<PseudoclassValue> pseudoclasses;
+
+		PropertyList get(int id) {
+			return id < slots.length ? slots[id] : null;
+		}
+
+		PropertyList create(int id) {
+			if (id >= slots.length)
+				slots = Arrays.copyOf(slots, Math.max(id + 1, PropertyRegistry.size()));
+			PropertyList result = new PropertyList(PropertyRegistry.getName(id));
+			slots[id] = result;
+			return result;
+		}
+
+		void remove(int id) {
+			slots[id] = null;
+		}
+
+		/** Returns the number of slots, some of which may be empty. */
+		int size() {
+			return slots.length;
+		}
 	}
 
 	/**
@@ -86,7 +218,7 @@ public class PropertyManager {
 
 		private Object value;
 
-		private Priority priority;
+		private long priority;
 
 		private Rule source;
 
@@ -96,6 +228,11 @@ public class PropertyManager {
 
 		public PropertyValue(String property, Object value, Rule source, Priority priority,
 				Animation animation, boolean inherited) {
+			this(property, value, source, priority.getPackedValue(), animation, inherited);
+		}
+
+		PropertyValue(String property, Object value, Rule source, long priority,
+				Animation animation, boolean inherited) {
 			this.property = property;
 			this.value = value;
 			this.priority = priority;
@@ -113,7 +250,7 @@ public class PropertyManager {
 		}
 
 		public Priority getPriority() {
-			return priority;
+			return new Priority(priority);
 		}
 
 		public Rule getSource() {
@@ -129,7 +266,7 @@ public class PropertyManager {
 		}
 
 		public int compareTo(Object o) {
-			return getPriority().compareTo(((PropertyValue) o).getPriority());
+			return Long.compare(priority, ((PropertyValue) o).priority);
 		}
 
 		public boolean equals(Object o) {
@@ -140,7 +277,7 @@ public class PropertyManager {
 			if (!(o instanceof PropertyValue))
 				return false;
 			PropertyValue value = (PropertyValue) o;
-			if (!value.getPriority().equals(getPriority()))
+			if (value.priority != priority)
 				return false;
 			if (!property.equals(value.getPropertyName()))
 				return false;
@@ -151,11 +288,11 @@ public class PropertyManager {
 
 		public int hashCode() {
 			return property.hashCode() ^ (source != null ? source.hashCode() : 0)
-				^ (value != null ? value.hashCode() : 0) ^ priority.hashCode();
+				^ (value != null ? value.hashCode() : 0) ^ (int) (priority ^ (priority >>> 32));
 		}
 
 		public String toString() {
-			return "PropertyValue[" + property + "=" + value + ", " + priority + "]";
+			return "PropertyValue[" + property + "=" + value + ", " + getPriority() + "]";
 		}
 	}
 
@@ -197,24 +334,249 @@ public class PropertyManager {
 		}
 	}
 
+	/**
+	 * Property writes for a single styleable which have been deferred by an
+	 * open {@link Batch}. Only the most recent value for each property is
+	 * kept.
+	 */
+	private static class PendingWrites {
+		private final Styleable object;
+
+		private final BitSet pending = new BitSet();
+
+		private int[] ids = new int[8];
+
+		private int count;
+
+		private Object[] values = new Object[8];
+
+		private Animation[] animations = new Animation[8];
+
+		PendingWrites(Styleable object) {
+			this.object = object;
+		}
+
+		boolean isPending(int id) {
+			return pending.get(id);
+		}
+
+		Object get(int id) {
+			return values[id];
+		}
+
+		void put(int id, Object value, Animation animation) {
+			if (id >= values.length) {
+				int length = Math.max(id + 1, PropertyRegistry.size());
+				values = Arrays.copyOf(values, length);
+				animations = Arrays.copyOf(animations, length);
+			}
+			if (!pending.get(id)) {
+				pending.set(id);
+				if (count == ids.length)
+					ids = Arrays.copyOf(ids, count * 2);
+				ids[count++] = id;
+			}
+			values[id] = value;
+			animations[id] = animation;
+		}
+
+		void commit() {
+			for (int i = 0; i < count; i++) {
+				int id = ids[i];
+				setProperty(object, id, PropertyRegistry.getName(id), values[id],
+					animations[id]);
+				PropertyList list = getPropertyList(object, id, false);
+				if (list != null && list.size() == 1)
+					getPropertyTable(object, false).remove(id); // no styles left
+			}
+		}
+	}
+
+	/**
+	 * Collects property writes while styles are being resolved, so that a
+	 * property which is assigned by several rules (or removed and then
+	 * reapplied) is only set once, with its final value, when the outermost
+	 * batch ends.
+	 */
+	private static class Batch {
+		private int depth;
+
+		private final Map<Styleable, PendingWrites> nodes = new IdentityHashMap<Styleable, PendingWrites>();
+
+		private final List<PendingWrites> order = new ArrayList<PendingWrites>();
+
+		PendingWrites get(Styleable object, boolean create) {
+			PendingWrites result = nodes.get(object);
+			if (result == null && create) {
+				result = new PendingWrites(object);
+				nodes.put(object, result);
+				order.add(result);
+			}
+			return result;
+		}
+	}
+
+	private static final ThreadLocal<Batch> batch = new ThreadLocal<Batch>() {
+		protected Batch initialValue() {
+			return new Batch();
+		}
+	};
+
 	private PropertyManager() { /* not instantiable */
 	}
 
+	/**
+	 * Starts deferring property writes on the current thread. Until the
+	 * matching {@link #endBatch}, values are resolved as usual but objects
+	 * are not modified. Batches may be nested.
+	 * <p>
+	 * INTERNAL USE ONLY.
+	 */
+	public static void beginBatch() {
+		batch.get().depth++;
+	}
+
+	/**
+	 * Ends a batch started with {@link #beginBatch}. When the outermost batch
+	 * ends, each property which changed is set to its final value exactly
+	 * once.
+	 * <p>
+	 * INTERNAL USE ONLY.
+	 */
+	public static void endBatch() {
+		Batch current = batch.get();
+		if (--current.depth > 0)
+			return;
+		if (current.order.isEmpty())
+			return;
+		PendingWrites[] writes = current.order.toArray(new PendingWrites[current.order.size()]);
+		current.order.clear();
+		current.nodes.clear();
+		for (PendingWrites w : writes)
+			w.commit();
+	}
+
+	/**
+	 * Returns the pending writes for the object if a batch is open and the
+	 * object has any, or null.
+	 */
+	private static PendingWrites getPendingWrites(Styleable object) {
+		Batch current = batch.get();
+		return current.depth > 0 ? current.get(object, false) : null;
+	}
+
+	/**
+	 * Returns the value of an object's property, including any write to it
+	 * which is still pending in the current batch. Values which depend on
+	 * other properties, such as relative sizes, must be computed against
+	 * this rather than the object itself, which is only updated when the
+	 * batch ends.
+	 * 
+	 *@param object
+	 *            the object being examined
+	 *@param property
+	 *            the property name
+	 *@throws StylesheetException
+	 *             if the property cannot be read
+	 */
+	public static Object getProperty(Styleable object, String property)
+			throws StylesheetException {
+		PendingWrites pending = getPendingWrites(object);
+		if (pending != null) {
+			int id = PropertyRegistry.getId(property);
+			if (pending.isPending(id))
+				return pending.get(id);
+		}
+		return object.getProperty(property);
+	}
+
+	/** Sets a property now, or when the current batch ends. */
+	private static void writeProperty(Styleable object, int id, String property, Object value,
+			Animation animation) throws StylesheetException {
+		Batch current = batch.get();
+		if (current.depth > 0)
+			current.get(object, true).put(id, value, animation);
+		else
+			setProperty(object, id, property, value, animation);
+	}
+
+	private static void setProperty(Styleable object, int id, String property, Object value,
+			Animation animation) throws StylesheetException {
+		PropertyList list = getPropertyList(object, id, false);
+		if (animation != null && animationSupport)
+			AnimationManager.animateTransition(object, property, value, animation);
+		else if (isCurrentValue(object, list, property, value)) {
+			skippedWrites.incrementAndGet();
+			return;
+		} else
+			object.setProperty(property, value);
+		if (list != null) {
+			list.written = true;
+			list.writtenValue = value;
+		}
+	}
+
+	/**
+	 * Returns true if the object's property already holds the value, as judged
+	 * by the property's {@link ValueEquality}. Only a value we wrote ourselves
+	 * is trusted: getters such as <code>Component.getForeground</code> report
+	 * the parent's value while the object has none of its own, and skipping
+	 * the write would leave the object following its parent.
+	 */
+	private static boolean isCurrentValue(Styleable object, PropertyList list, String property,
+			Object value) {
+		if (list == null || !list.written)
+			return false;
+		ValueEquality equality = getValueEquality(object, property);
+		if (equality == ValueEquality.NEVER || !equality.isEqual(list.writtenValue, value))
+			return false;
+		// the object may have been modified since we wrote it
+		Object current;
+		try {
+			current = object.getProperty(property);
+		} catch (StylesheetException e) {
+			return false; // e.g. write-only property
+		}
+		return equality.isEqual(current, value);
+	}
+
+	/** Returns the comparison configured for an object's property. */
+	private static ValueEquality getValueEquality(Styleable object, String property) {
+		if (object instanceof DefaultStyleable) {
+			PropertyHandler handler = ((DefaultStyleable) object).getPropertyHandler(property);
+			if (handler instanceof DefaultPropertyHandler)
+				return ((DefaultPropertyHandler) handler).getValueEquality();
+			if (handler instanceof ValueEquality)
+				return (ValueEquality) handler;
+		}
+		return ValueEquality.EQUALS;
+	}
+
+	/**
+	 * Returns the number of property writes which were skipped because the
+	 * property already held the value being written.
+	 * 
+	 *@return the number of skipped writes
+	 */
+	public static long getSkippedWriteCount() {
+		return skippedWrites.get();
+	}
+
 	/**
 	 * Returns an unsorted list of all properties currently applied to the
 	 * specified object (this includes values which are being masked by
 	 * higher-priority values).
 	 */
 	public static List<PropertyValue> getAllPropertiesForObject(Styleable object) {
-		Map<String, PropertyList> propertyMap = properties.get(object);
-		if (propertyMap == null) {
-			propertyMap = new HashMap<String, PropertyList>();
-			properties.put(object, propertyMap);
-		}
-
 		List<PropertyValue> result = new ArrayList<PropertyValue>();
-		for (List<PropertyValue> list : propertyMap.values())
-			result.addAll(list);
+		PropertyTable table = getPropertyTable(object, false);
+		if (table != null) {
+			for (int i = 0; i < table.size(); i++) {
+				PropertyList list = table.get(i);
+				if (list != null)
+					result.addAll(list);
+			}
+		}
 		return result;
 	}
 
@@ -224,18 +586,46 @@ public class PropertyManager {
 	 * list; this is the value which should actually take effect.
 	 */
 	public static List<PropertyValue> getPropertyListForObject(Styleable object, String property) {
-		Map<String, PropertyList> propertyMap = properties.get(object);
-		if (propertyMap == null) {
-			propertyMap = new HashMap<String, PropertyList>();
-			properties.put(object, propertyMap);
-		}
+		PropertyList propertyList = getPropertyList(object, PropertyRegistry.getId(property), false);
+		if (propertyList == null)
+			return Collections.emptyList();
+		return propertyList;
+	}
 
-		PropertyList propertyList = propertyMap.get(property);
-		if (propertyList == null) {
-			propertyList = new PropertyList();
-			propertyMap.put(property, propertyList);
+	/**
+	 * Returns the table of property values for an object, or <code>null</code>
+	 * if it has none and <code>create</code> is false.
+	 */
+	private static PropertyTable getPropertyTable(Styleable object, boolean create) {
+		PropertyTable table;
+		if (object instanceof DefaultStyleable) {
+			DefaultStyleable styleable = (DefaultStyleable) object;
+			table = styleable.getPropertyTable();
+			if (table == null && create) {
+				table = new PropertyTable();
+				styleable.setPropertyTable(table);
+			}
+		} else {
+			table = properties.get(object);
+			if (table == null && create) {
+				table = new PropertyTable();
+				properties.put(object, table);
+			}
 		}
+		return table;
+	}
 
+	/**
+	 * Returns the sorted list of values for a property, or <code>null</code>
+	 * if there are none and <code>create</code> is false.
+	 */
+	private static PropertyList getPropertyList(Styleable object, int id, boolean create) {
+		PropertyTable table = getPropertyTable(object, create);
+		if (table == null)
+			return null;
+		PropertyList propertyList = table.get(id);
+		if (propertyList == null && create)
+			propertyList = table.create(id);
 		return propertyList;
 	}
 
@@ -243,35 +633,30 @@ public class PropertyManager {
 	 * Returns true if there is a matching value currently applied to the
 	 * object.
 	 */
-	private static boolean isPropertyApplied(Styleable object, String property, Rule source,
-			Priority priority, boolean wasInherited) {
-		List<PropertyValue> propertyList = getPropertyListForObject(object, property);
-		for (int i = 0; i < propertyList.size(); i++) {
-			PropertyValue p = propertyList.get(i);
-			if (p.getSource() == source)
-				return true;
-		}
-		return false;
+	private static boolean isPropertyApplied(Styleable object, int id, Rule source,
+			long priority, boolean wasInherited) {
+		PropertyList propertyList = getPropertyList(object, id, false);
+		return propertyList != null && propertyList.indexOf(source) != -1;
 	}
 
 	/** Adds the specified value to the property list for the object. */
-	private static void propertyApplied(Styleable object, String property, Object value,
-			Rule source, Priority priority, Animation animation, boolean wasInherited) {
-		PropertyList propertyList = (PropertyList) getPropertyListForObject(object, property);
+	private static void propertyApplied(Styleable object, int id, String property, Object value,
+			Rule source, long priority, Animation animation, boolean wasInherited) {
+		PropertyList propertyList = getPropertyList(object, id, true);
 		propertyList.overridden = false;
-		propertyList.add(new PropertyValue(property, value, source, priority, animation,
+		propertyList.insert(new PropertyValue(property, value, source, priority, animation,
 				wasInherited));
-		Collections.sort(propertyList);
 	}
 
 	/** Removes the specifiedfied value from the property list for the object. */
-	private static void propertyRemoved(Styleable object, String property, Object value,
-			Rule source, Priority priority, Animation animation, boolean wasInherited) {
-		PropertyList propertyList = (PropertyList) getPropertyListForObject(object, property);
-		if (propertyList.overridden == false
+	private static void propertyRemoved(Styleable object, int id, String property, Object value,
+			Rule source, long priority, Animation animation, boolean wasInherited) {
+		PropertyList propertyList = getPropertyList(object, id, false);
+		PendingWrites pending = getPendingWrites(object);
+		if (propertyList.overridden == false && (pending == null || !pending.isPending(id))
 			&& (!animationSupport || !AnimationManager.isAnimating(object, property))) {
 			Object value1 = object.getProperty(property);
-			Object value2 = getCurrentValue(object, property);
+			Object value2 = getCurrentValue(object, id);
 			boolean equal;
 			if (value1 == null)
 				equal = value2 == null;
@@ -284,20 +669,24 @@ public class PropertyManager {
 				propertyList.overridden = true;
 			}
 		}
-		propertyList.remove(new PropertyValue(property, value, source, priority, animation,
-				wasInherited));
+		int index = propertyList.indexOf(source, wasInherited);
+		if (index != -1)
+			propertyList.removeAt(index);
 	}
 
 	/**
 	 * Returns the highest-priority value currently in effect for the specified
 	 * property.
 	 */
-	private static Object getCurrentValue(Styleable object, String property) {
-		PropertyList propertyList = (PropertyList) getPropertyListForObject(object, property);
+	private static Object getCurrentValue(Styleable object, int id) {
+		PropertyList propertyList = getPropertyList(object, id, false);
+		if (propertyList == null)
+			return NO_STYLE;
 		if (propertyList.overridden)
-			return object.getProperty(property);
-		if (propertyList.size() > 0)
-			return propertyList.get(propertyList.size() - 1).getValue();
+			return object.getProperty(propertyList.property);
+		PropertyValue top = propertyList.top();
+		if (top != null)
+			return top.getValue();
 		return NO_STYLE;
 	}
 
@@ -311,13 +700,89 @@ public class PropertyManager {
 	 *             if an error occurs
 	 */
 	public static void cascadeFrom(Styleable object) throws StylesheetException {
-		Styleable[] children = object.getStyleableChildren();
-		if (children != null) {
-			for (Styleable child : children)
-				cascadeTo(child, true);
+		List<Styleable> children = StyleableChildren.of(object);
+		for (int i = 0; i < children.size(); i++)
+			cascadeTo(children.get(i), true);
+	}
+
+	/**
+	 * Applies inherited values of the specified properties to an object's
+	 * children. Only children which inherit at least one of the properties
+	 * are visited, and their descendents only for the properties they
+	 * inherit, so changing a property which is not inherited costs nothing.
+	 * 
+	 *@param object
+	 *            the object which should pass inherited values to its children
+	 *@param properties
+	 *            the names of the properties whose values changed
+	 *@throws StylesheetException
+	 *             if an error occurs
+	 */
+	public static void cascadeFrom(Styleable object, String[] properties)
+			throws StylesheetException {
+		List<Styleable> children = StyleableChildren.of(object);
+		for (int i = 0; i < children.size(); i++) {
+			Styleable child = children.get(i);
+			String[] inherited = getInheritedProperties(child, properties);
+			if (inherited != null)
+				cascadeTo(child, object, inherited);
 		}
 	}
 
+	/**
+	 * Returns those of the properties which the object inherits, or
+	 * <code>null</code> if it inherits none of them.
+	 */
+	private static String[] getInheritedProperties(Styleable object, String[] properties) {
+		String[] result = null;
+		int count = 0;
+		for (String property : properties) {
+			if (object.isPropertyInherited(property)) {
+				if (result == null)
+					result = new String[properties.length];
+				result[count++] = property;
+			}
+		}
+		return result == null || count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * As {@link #cascadeTo(Styleable, boolean)}, but for the specified
+	 * properties only, all of which the object inherits.
+	 */
+	private static void cascadeTo(Styleable object, Styleable parent, String[] properties)
+			throws StylesheetException {
+		for (String property : properties) {
+			int id = PropertyRegistry.getId(property);
+			PropertyList parentList = getPropertyList(parent, id, false);
+			List<Rule> cascaded = null;
+			if (parentList != null) {
+				for (PropertyValue value : new ArrayList<PropertyValue>(parentList)) {
+					if (value.source != null) {
+						applyProperty(object, id, property, value.getValue(), value.getSource(),
+							Priority.deeper(value.priority), value.getAnimation(), true);
+						if (cascaded == null)
+							cascaded = new ArrayList<Rule>();
+						cascaded.add(value.getSource());
+					}
+				}
+			}
+
+			// remove defunct cascaded values
+			PropertyList list = getPropertyList(object, id, false);
+			if (list != null) {
+				for (PropertyValue value : new ArrayList<PropertyValue>(list)) {
+					if (value.wasInherited()
+						&& (cascaded == null || !cascaded.contains(value.getSource()))) {
+						removeProperty(object, id, property, value.getValue(),
+							value.getSource(), value.priority, value.getAnimation(), true);
+					}
+				}
+			}
+		}
+		cascadeFrom(object, properties);
+	}
+
 	/**
 	 * Applies inherited values from the object's parent. Has no effect if the
 	 * values have already been inherited.
@@ -338,11 +803,9 @@ public class PropertyManager {
 			for (PropertyValue property : propertyList) {
 				if (property.source != null
 					&& object.isPropertyInherited(property.getPropertyName())) {
-					Priority oldPriority = property.getPriority();
-					Priority newPriority = (Priority) oldPriority.clone();
-					newPriority.setDepth(oldPriority.getDepth() + 1);
-					applyProperty(object, property.getPropertyName(), property.getValue(), property
-						.getSource(), newPriority, property.getAnimation(), true);
+					applyProperty(object, PropertyRegistry.getId(property.getPropertyName()),
+						property.getPropertyName(), property.getValue(), property.getSource(),
+						Priority.deeper(property.priority), property.getAnimation(), true);
 					if (cascaded == null)
 						cascaded = new HashSet<PropertyValue>();
 					cascaded.add(property);
@@ -363,17 +826,18 @@ public class PropertyManager {
 						}
 					}
 					if (!matched) {
-						removeProperty(object, property.getPropertyName(), property.getValue(),
-							property.getSource(), property.getPriority(), property.getAnimation(),
-							true);
+						removeProperty(object, PropertyRegistry.getId(property.getPropertyName()),
+							property.getPropertyName(), property.getValue(), property.getSource(),
+							property.priority, property.getAnimation(), true);
 					}
 				}
 			}
 		}
 
 		if (recurse) {
-			for (Styleable child : object.getStyleableChildren())
-				cascadeTo(child, true);
+			List<Styleable> children = StyleableChildren.of(object);
+			for (int i = 0; i < children.size(); i++)
+				cascadeTo(children.get(i), true);
 		}
 	}
 
@@ -381,14 +845,17 @@ public class PropertyManager {
 	 * Returns a list of all pseudoclass listeners currently applied to an
 	 * object.
 	 */
-	private static List<PseudoclassValue> getPseudoclassListForObject(Styleable object) {
-		List<PseudoclassValue> pseudoclassList = pseudoclasses.get(object);
-		if (pseudoclassList == null) {
-			pseudoclassList = new ArrayList<PseudoclassValue>();
-			pseudoclasses.put(object, pseudoclassList);
+	private static List<PseudoclassValue> getPseudoclassListForObject(Styleable object,
+			boolean create) {
+		PropertyTable table = getPropertyTable(object, create);
+		if (table == null)
+			return Collections.emptyList();
+		if (table.pseudoclasses == null) {
+			if (!create)
+				return Collections.emptyList();
+			table.pseudoclasses = new ArrayList<PseudoclassValue>();
 		}
-
-		return pseudoclassList;
+		return table.pseudoclasses;
 	}
 
 	/**
@@ -408,7 +875,7 @@ public class PropertyManager {
 	 */
 	public static void addPseudoclassListener(Styleable object, String pseudoclass,
 			PseudoclassListener listener, Rule source) throws StylesheetException {
-		List<PseudoclassValue> list = getPseudoclassListForObject(object);
+		List<PseudoclassValue> list = getPseudoclassListForObject(object, true);
 		list.add(new PseudoclassValue(pseudoclass, listener, source));
 		object.addPseudoclassListener(pseudoclass, listener);
 	}
@@ -430,9 +897,11 @@ public class PropertyManager {
 	 */
 	public static void removePseudoclassListener(Styleable object, String pseudoclass,
 			PseudoclassListener listener, Rule source) throws StylesheetException {
-		List<PseudoclassValue> list = getPseudoclassListForObject(object);
-		list.remove(new PseudoclassValue(pseudoclass, listener, source));
+		List<PseudoclassValue> list = getPseudoclassListForObject(object, false);
+		boolean removed = list.remove(new PseudoclassValue(pseudoclass, listener, source));
 		object.removePseudoclassListener(pseudoclass, listener);
+		if (removed && source != null)
+			source.pseudoclassListenerRemoved(listener);
 	}
 
 	/**
@@ -448,18 +917,20 @@ public class PropertyManager {
 		List<PropertyValue> propertyList = getAllPropertiesForObject(object);
 		for (PropertyValue property : propertyList) {
 			if (property.getSource() != null) {
-				removeProperty(object, property.getPropertyName(), property.getValue(), property
-					.getSource(), property.getPriority(), property.getAnimation());
+				removeProperty(object, PropertyRegistry.getId(property.getPropertyName()),
+					property.getPropertyName(), property.getValue(), property.getSource(),
+					property.priority, property.getAnimation(), false);
 			}
 		}
 		List<PseudoclassValue> pseudoclassList = new ArrayList<PseudoclassValue>(
-				getPseudoclassListForObject(object));
+				getPseudoclassListForObject(object, false));
 		for (PseudoclassValue pseudoclass : pseudoclassList) {
 			removePseudoclassListener(object, pseudoclass.getPseudoclass(), pseudoclass
 				.getPseudoclassListener(), pseudoclass.getSource());
 		}
-		for (Styleable child : object.getStyleableChildren())
-			removeAllStyles(child);
+		List<Styleable> children = StyleableChildren.of(object);
+		for (int i = 0; i < children.size(); i++)
+			removeAllStyles(children.get(i));
 	}
 
 	/**
@@ -478,13 +949,13 @@ public class PropertyManager {
 		List<PropertyValue> propertyList = getAllPropertiesForObject(object);
 		for (PropertyValue property : propertyList) {
 			if (property.getSource() != null && property.getSource().getStylesheet() == stylesheet) {
-				removeProperty(object, property.getPropertyName(), property.getValue(), property
-					.getSource(), property.getPriority(), property.getAnimation(), property
-					.wasInherited());
+				removeProperty(object, PropertyRegistry.getId(property.getPropertyName()),
+					property.getPropertyName(), property.getValue(), property.getSource(),
+					property.priority, property.getAnimation(), property.wasInherited());
 			}
 		}
 		List<PseudoclassValue> pseudoclassList = new ArrayList<PseudoclassValue>(
-				getPseudoclassListForObject(object));
+				getPseudoclassListForObject(object, false));
 		for (PseudoclassValue pseudoclass : pseudoclassList) {
 			if (pseudoclass.getSource() != null
 				&& pseudoclass.getSource().getStylesheet() == stylesheet) {
@@ -492,8 +963,9 @@ public class PropertyManager {
 					.getPseudoclassListener(), pseudoclass.getSource());
 			}
 		}
-		for (Styleable child : object.getStyleableChildren())
-			removeStylesheet(stylesheet, child);
+		List<Styleable> children = StyleableChildren.of(object);
+		for (int i = 0; i < children.size(); i++)
+			removeStylesheet(stylesheet, children.get(i));
 	}
 
 	/**
@@ -519,11 +991,17 @@ public class PropertyManager {
 	 */
 	public static void applyProperty(Styleable object, String property, Object newValue,
 			Rule source, Priority priority, Animation animation) throws StylesheetException {
-		applyProperty(object, property, newValue, source, priority, animation, false);
+		applyProperty(object, PropertyRegistry.getId(property), property, newValue, source,
+			priority.getPackedValue(), animation, false);
 	}
 
-	private static void applyProperty(Styleable object, String property, Object newValue,
-			Rule source, Priority priority, Animation animation, boolean wasInherited)
+	/**
+	 * Applies a property value given the property's {@link PropertyRegistry}
+	 * ID as well as its name, so that callers which apply the same property
+	 * repeatedly need only look the ID up once.
+	 */
+	static void applyProperty(Styleable object, int id, String property, Object newValue,
+			Rule source, long priority, Animation animation, boolean wasInherited)
 			throws StylesheetException {
 		if (newValue instanceof Size && !((Size) newValue).isComputed())
 			throw new IllegalArgumentException("must compute size '" + newValue
@@ -531,23 +1009,26 @@ public class PropertyManager {
 		Map<String, Object> split = object.splitCompoundProperty(property, newValue);
 		if (split != null) {
 			for (Map.Entry<String, Object> e : split.entrySet())
-				applyProperty(object, e.getKey(), e.getValue(), source, priority, animation,
+				applyProperty(object, PropertyRegistry.getId(e.getKey()), e.getKey(),
+					e.getValue(), source, priority, animation, wasInherited);
+		} else {
+			if (!isPropertyApplied(object, id, source, priority, wasInherited)) {
+				Object value = getCurrentValue(object, id);
+				if (value == NO_STYLE) {
+					PendingWrites pending = getPendingWrites(object);
+					if (pending != null && pending.isPending(id))
+						value = pending.get(id); // object not yet updated
+					else if (animationSupport && AnimationManager.isAnimating(object, property))
+						value = AnimationManager.getTargetValue(object, property);
+					else
+						value = object.getProperty(property);
+					propertyApplied(object, id, property, value, null, NO_STYLE_PRIORITY, null,
+						false);
+				}
+				propertyApplied(object, id, property, newValue, source, priority, animation,
 					wasInherited);
-		} else if (!isPropertyApplied(object, property, source, priority, wasInherited)) {
-			Object value = getCurrentValue(object, property);
-			if (value == NO_STYLE) {
-				if (animationSupport && AnimationManager.isAnimating(object, property))
-					value = AnimationManager.getTargetValue(object, property);
-				else
-					value = object.getProperty(property);
-				propertyApplied(object, property, value, null, new Priority(false, -1, -1, -1, -1,
-						-1, -1, -1), null, false);
+				writeProperty(object, id, property, getCurrentValue(object, id), animation);
 			}
-			propertyApplied(object, property, newValue, source, priority, animation, wasInherited);
-			if (animation != null && animationSupport)
-				AnimationManager.animateTransition(object, property, newValue, animation);
-			else
-				object.setProperty(property, getCurrentValue(object, property));
 		}
 	}
 
@@ -570,35 +1051,41 @@ public class PropertyManager {
 	 */
 	public static void removeProperty(Styleable object, String property, Object oldValue,
 			Rule source, Priority priority, Animation animation) throws StylesheetException {
-		removeProperty(object, property, oldValue, source, priority, animation, false);
+		removeProperty(object, PropertyRegistry.getId(property), property, oldValue, source,
+			priority.getPackedValue(), animation, false);
 	}
 
-	private static void removeProperty(Styleable object, String property, Object oldValue,
-			Rule source, Priority priority, Animation animation, boolean wasInherited)
+	/**
+	 * Removes a property value given the property's {@link PropertyRegistry}
+	 * ID as well as its name.
+	 * 
+	 *@see #applyProperty(Styleable, int, String, Object, Rule, long, Animation,
+	 *     boolean)
+	 */
+	static void removeProperty(Styleable object, int id, String property, Object oldValue,
+			Rule source, long priority, Animation animation, boolean wasInherited)
 			throws StylesheetException {
 		Map<String, Object> split = object.splitCompoundProperty(property, oldValue);
 		if (split != null) {
 			for (Map.Entry<String, Object> e : split.entrySet())
-				removeProperty(object, e.getKey(), e.getValue(), source, priority, animation,
-					wasInherited);
+				removeProperty(object, PropertyRegistry.getId(e.getKey()), e.getKey(),
+					e.getValue(), source, priority, animation, wasInherited);
 		}
-		if (isPropertyApplied(object, property, source, priority, wasInherited)) {
-			propertyRemoved(object, property, oldValue, source, priority, animation, wasInherited);
-			Object value = getCurrentValue(object, property);
+		if (isPropertyApplied(object, id, source, priority, wasInherited)) {
+			propertyRemoved(object, id, property, oldValue, source, priority, animation,
+				wasInherited);
+			Object value = getCurrentValue(object, id);
 			if (value == NO_STYLE)
 				throw new java.lang.IllegalStateException("found unexpected NO_STYLE value");
-			if (animation != null && animationSupport)
-				AnimationManager.animateTransition(object, property, getCurrentValue(object,
-					property), animation);
-			else
-				object.setProperty(property, getCurrentValue(object, property));
+			writeProperty(object, id, property, value, animation);
 
-			Map<String, PropertyList> propertyMap = properties.get(object);
-			if (propertyMap != null) {
-				PropertyList propertyList = propertyMap.get(property);
-				if (propertyList.size() == 1)
-					propertyMap.remove(property); // no styles left
-			}
+			// no styles left;  within a batch the list is kept until the write
+			// is committed, so that a value removed and then reapplied is
+			// still known to be the one we wrote
+			PropertyList propertyList = getPropertyList(object, id, false);
+			if (propertyList != null && propertyList.size() == 1
+				&& getPendingWrites(object) == null)
+				getPropertyTable(object, false).remove(id);
 		} else if (debug)
 			System.err.println("WARNING: attempted to remove property " + object + "." + property
 				+ " (" + oldValue + "), but it was " + "not present");
@@ -606,14 +1093,16 @@ public class PropertyManager {
 
 	static void makeStatic(Stylesheet stylesheet, Styleable object) {
 		// get list of all highest-priority properties in effect
-		Map<String, PropertyList> propertyMap = properties.get(object);
-		if (propertyMap == null)
+		PropertyTable table = getPropertyTable(object, false);
+		if (table == null)
 			return;
 
 		List<PropertyValue> properties = new ArrayList<PropertyValue>();
-		for (List<PropertyValue> list : propertyMap.values()) {
+		for (int i = 0; i < table.size(); i++) {
 			// grab the last (highest-priority) value for each property
-			properties.add(list.get(list.size() - 1));
+			PropertyList list = table.get(i);
+			if (list != null && list.top() != null)
+				properties.add(list.top());
 		}
 
 		for (PropertyValue property : properties) {
@@ -623,14 +1112,16 @@ public class PropertyManager {
 				List<PropertyValue> allValues = new ArrayList(getPropertyListForObject(object,
 					property.getPropertyName()));
 				for (PropertyValue p : allValues) {
-					removeProperty(object, p.getPropertyName(), p.getValue(), p.getSource(), p
-						.getPriority(), p.getAnimation(), p.wasInherited());
+					removeProperty(object, PropertyRegistry.getId(p.getPropertyName()),
+						p.getPropertyName(), p.getValue(), p.getSource(), p.priority,
+						p.getAnimation(), p.wasInherited());
 				}
 				// reapply value statically
 				object.setProperty(property.getPropertyName(), property.getValue());
 			}
 		}
-		for (Styleable child : object.getStyleableChildren())
-			makeStatic(stylesheet, child);
+		List<Styleable> children = StyleableChildren.of(object);
+		for (int i = 0; i < children.size(); i++)
+			makeStatic(stylesheet, children.get(i));
 	}
 }
\ No newline at end of file
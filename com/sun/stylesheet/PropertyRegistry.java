@@ -0,0 +1,97 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+package com.sun.stylesheet;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns each property name a small, dense integer ID.  IDs are allocated on 
+ * first use, starting at zero, and never change or get reused, so they can be 
+ * used to index per-object arrays of property state instead of hashing 
+ * property names.
+ *
+ *@see PropertyManager
+ */
+public class PropertyRegistry {
+    private static final Map<String, Integer> ids = 
+            new ConcurrentHashMap<String, Integer>();
+    
+    private static volatile String[] names = new String[32];
+    
+    private static int count;
+    
+    private PropertyRegistry() { /* not instantiable */ }
+    
+    
+    /**
+     * Returns the ID of the named property, allocating a new one if the 
+     * property has not been seen before.
+     *
+     *@param propertyName the name of the property, e.g. "foreground"
+     *@return the property's ID
+     */
+    public static int getId(String propertyName) {
+        Integer result = ids.get(propertyName);
+        if (result == null)
+            result = register(propertyName);
+        return result;
+    }
+    
+    
+    private static synchronized Integer register(String propertyName) {
+        Integer result = ids.get(propertyName);
+        if (result == null) {
+            if (count == names.length)
+                names = Arrays.copyOf(names, count * 2);
+            names[count] = propertyName;
+            result = count++;
+            ids.put(propertyName, result);
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Returns the name of the property with the specified ID.
+     *
+     *@param id a property ID previously returned by {@link #getId}
+     *@return the property's name
+     */
+    public static String getName(int id) {
+        return names[id];
+    }
+    
+    
+    /**
+     * Returns the number of IDs allocated so far.  All IDs are less than this 
+     * value.
+     *
+     *@return the number of registered properties
+     */
+    public static synchronized int size() {
+        return count;
+    }
+}
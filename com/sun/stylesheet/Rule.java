@@ -26,14 +26,20 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.sun.stylesheet.css.CompoundSelector;
 import com.sun.stylesheet.css.SimpleSelector;
+import com.sun.stylesheet.styleable.DefaultStyleable;
 
 /**
  * A set of modifications which can affect a {@link Styleable}.  Rules should 
@@ -46,10 +52,128 @@ import com.sun.stylesheet.css.SimpleSelector;
  *@author Ethan Nicholas
  */
 public class Rule {
+    /** 
+     * Pseudoclass listeners of styleables which cannot hold their own.  
+     * {@link DefaultStyleable} wrappers store theirs directly and never 
+     * appear here.  Also guards all listener arrays and registration counts.
+     */
+    private static final Map<Styleable, RuleListener[]> ruleListeners = 
+            new WeakHashMap<Styleable, RuleListener[]>();
+    
+    /** The slot in which {@link DefaultStyleable} wrappers hold theirs. */
+    private static final DefaultStyleable.Key<RuleListener[]> 
+            RULE_LISTENERS = new DefaultStyleable.Key<RuleListener[]>();
+    
     private Stylesheet parent;
     private Selector[] selectors;
-    private transient Map<Object, PseudoclassListener> pseudoclassListeners;
     private Declaration[] declarations;
+    
+    
+    /** 
+     * Applies the rule's declarations to one object as its pseudoclasses 
+     * come and go.
+     */
+    private class RuleListener implements PseudoclassListener {
+        /** 
+         * The object, or a weak reference to it if it is a key of 
+         * ruleListeners, so as not to keep the key alive.
+         */
+        private final Object target;
+        private final Stylesheet sourceSheet;
+        private final long priority;
+        private final int count;
+        private int currentCount;
+        
+        /** 
+         * The number of pseudoclasses the listener is registered for;  it is 
+         * discarded when this drops to zero.
+         */
+        private int registrations;
+        
+        /** The simple properties the declarations set on object. */
+        private String[] affected;
+        
+        RuleListener(Styleable object, Stylesheet sourceSheet, long priority, 
+                int count) {
+            this.target = object instanceof DefaultStyleable ? object : 
+                    new WeakReference<Styleable>(object);
+            this.sourceSheet = sourceSheet;
+            this.priority = priority;
+            this.count = count;
+        }
+        
+        
+        Rule getRule() {
+            return Rule.this;
+        }
+        
+        
+        private Styleable getObject() {
+            if (target instanceof Reference)
+                return (Styleable) ((Reference) target).get();
+            return (Styleable) target;
+        }
+        
+        
+        private String[] getAffectedProperties(Styleable object) {
+            if (affected == null) {
+                Set<String> names = new LinkedHashSet<String>();
+                for (Declaration d : declarations)
+                    names.addAll(Arrays.asList(
+                            d.getAffectedProperties(object)));
+                affected = names.toArray(new String[names.size()]);
+            }
+            return affected;
+        }
+        
+        
+        public void pseudoclassAdded(PseudoclassEvent e) {
+            Styleable object = getObject();
+            if (object == null)
+                return;
+            if (++currentCount == count) {
+                PropertyManager.beginBatch();
+                try {
+                    for (Declaration d : declarations) {
+                        if (d.isImportant())
+                            d.applyTo(object, Rule.this, 
+                                    priority | Priority.IMPORTANT);
+                        else    
+                            d.applyTo(object, Rule.this, priority);
+                    }
+                    PropertyManager.cascadeFrom(object, 
+                            getAffectedProperties(object));
+                }
+                finally {
+                    PropertyManager.endBatch();
+                }
+            }
+        }
+        
+        
+        public void pseudoclassRemoved(PseudoclassEvent e) {
+            Styleable object = getObject();
+            if (object == null)
+                return;
+            if (currentCount-- == count) {
+                PropertyManager.beginBatch();
+                try {
+                    for (Declaration d : declarations) {
+                        d.removeFrom(object, 
+                                Rule.this,
+                                d.isImportant() ? 
+                                    priority | Priority.IMPORTANT : 
+                                    priority);
+                    }
+                    PropertyManager.cascadeFrom(object, 
+                            getAffectedProperties(object));
+                }
+                finally {
+                    PropertyManager.endBatch();
+                }
+            }
+        }
+    }
 
     
     /** 
@@ -112,62 +236,93 @@ public class Rule {
     }
 
 
-    private PseudoclassListener getPseudoclassListener(final Styleable object, 
-            final Stylesheet sourceSheet, final Priority priority, 
-            final int count) {
-        if (pseudoclassListeners == null)
-            pseudoclassListeners = new HashMap<Object, PseudoclassListener>();
-        List key = new ArrayList();
-        key.add(object);
-        key.add(sourceSheet);
-        PseudoclassListener result = pseudoclassListeners.get(key);
-        if (result == null) {
-            result = new PseudoclassListener() {
-                private int currentCount;
-                private Priority important;
-                
-                public void pseudoclassAdded(PseudoclassEvent e) {
-                    if (++currentCount == count) {
-                        for (Declaration d : declarations) {
-                            if (d.isImportant()) {
-                                if (important == null) {
-                                    important = (Priority) priority.clone();
-                                    important.setImportant(true);
-                                }
-                                d.applyTo(object, Rule.this, important);
-                            }
-                            else    
-                                d.applyTo(object, Rule.this, priority);
-                        }
-                        PropertyManager.cascadeFrom(object);
-                    }
+    /** 
+     * Returns the listeners of all rules for an object, or <code>null</code> 
+     * if it has none.  The caller must hold the ruleListeners lock.
+     */
+    private static RuleListener[] getRuleListeners(Styleable object) {
+        if (object instanceof DefaultStyleable)
+            return ((DefaultStyleable) object).getAttachment(RULE_LISTENERS);
+        return ruleListeners.get(object);
+    }
+    
+    
+    /** The caller must hold the ruleListeners lock. */
+    private static void setRuleListeners(Styleable object, 
+            RuleListener[] listeners) {
+        if (object instanceof DefaultStyleable)
+            ((DefaultStyleable) object).setAttachment(RULE_LISTENERS, 
+                    listeners);
+        else if (listeners != null)
+            ruleListeners.put(object, listeners);
+        else
+            ruleListeners.remove(object);
+    }
+    
+    
+    /** 
+     * Returns the object's listener for this rule, creating it if necessary, 
+     * and counts a new registration of it.
+     */
+    private PseudoclassListener getPseudoclassListener(Styleable object, 
+            Stylesheet sourceSheet, long priority, int count) {
+        synchronized (ruleListeners) {
+            RuleListener[] listeners = getRuleListeners(object);
+            int length = listeners != null ? listeners.length : 0;
+            for (int i = 0; i < length; i++) {
+                if (listeners[i].getRule() == this && 
+                        listeners[i].sourceSheet == sourceSheet) {
+                    listeners[i].registrations++;
+                    return listeners[i];
                 }
+            }
+            RuleListener result = new RuleListener(object, sourceSheet, 
+                    priority, count);
+            result.registrations = 1;
+            RuleListener[] newListeners = new RuleListener[length + 1];
+            if (length > 0)
+                System.arraycopy(listeners, 0, newListeners, 0, length);
+            newListeners[length] = result;
+            setRuleListeners(object, newListeners);
+            return result;
+        }
+    }
     
-                
-                public void pseudoclassRemoved(PseudoclassEvent e) {
-                    if (currentCount-- == count) {
-                        for (Declaration d : declarations) {
-                            Priority currentPriority;
-                            if (d.isImportant()) {
-                                if (important == null) {
-                                    important = (Priority) priority.clone();
-                                    important.setImportant(true);
-                                }
-                                currentPriority = important;
-                            }
-                            else
-                                currentPriority = priority;
-                            d.removeFrom(object, 
-                                    Rule.this,
-                                    currentPriority);
-                        }
-                        PropertyManager.cascadeFrom(object);
+    
+    /**
+     * Called by {@link PropertyManager} when one registration of a listener 
+     * created by this rule has been removed.  Once none remain, the listener 
+     * is dropped from its object, so that neither the object nor the rule 
+     * (and its stylesheet) keep the other reachable.
+     */
+    void pseudoclassListenerRemoved(PseudoclassListener listener) {
+        if (!(listener instanceof RuleListener))
+            return;
+        RuleListener ruleListener = (RuleListener) listener;
+        if (ruleListener.getRule() != this)
+            return;
+        synchronized (ruleListeners) {
+            if (--ruleListener.registrations > 0)
+                return;
+            Styleable object = ruleListener.getObject();
+            RuleListener[] listeners = object != null ? 
+                    getRuleListeners(object) : null;
+            if (listeners == null)
+                return;
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == ruleListener) {
+                    RuleListener[] newListeners = null;
+                    if (listeners.length > 1) {
+                        newListeners = new RuleListener[listeners.length - 1];
+                        System.arraycopy(listeners, 0, newListeners, 0, i);
+                        System.arraycopy(listeners, i + 1, newListeners, i, 
+                                newListeners.length - i);
                     }
+                    setRuleListeners(object, newListeners);
+                    return;
                 }
-            };
-            pseudoclassListeners.put(key, result);
+            }
         }
-        return result;
     }
     
     
@@ -187,26 +342,35 @@ public class Rule {
      */
     public void applyTo(final Styleable object, int depth, int index) 
             throws StylesheetException {
-        Match[] matches = matches(object);
+        applyTo(object, matches(object), depth, index);
+    }
+    
+    
+    /**
+     * Applies the rule to an object using matches which have already been 
+     * computed by {@link #matches}, possibly for an equivalent sibling.
+     *
+     *@param object the object to style
+     *@param matches the relevant matches for the object, or <code>null</code>
+     *@param depth the object's depth below the style root
+     *@param index the index of this rule within the stylesheet
+     */
+    void applyTo(final Styleable object, Match[] matches, int depth, int index) 
+            throws StylesheetException {
         if (matches != null) {
             for (Match match : matches) {
                 Match.Pseudoclass[] pseudoclasses = match.getPseudoclasses();
-                Priority priority = new Priority(false, 
+                long priority = Priority.pack(false, 
                         pseudoclasses != null ? pseudoclasses.length : 0,
                         parent.getPriority(), depth, match.getIdCount(), 
                         match.getStyleClassCount(), 
                         match.getJavaClassWeight(),
                         index);
-                Priority important = null;
                 if (pseudoclasses == null || pseudoclasses.length == 0) {
                     for (Declaration d : declarations) {
-                        if (d.isImportant()) {
-                            if (important == null) {
-                                important = (Priority) priority.clone();
-                                important.setImportant(true);
-                            }
-                            d.applyTo(object, this, important);
-                        }
+                        if (d.isImportant())
+                            d.applyTo(object, this, 
+                                    priority | Priority.IMPORTANT);
                         else    
                             d.applyTo(object, this, priority);
                     }
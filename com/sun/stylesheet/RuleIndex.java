@@ -0,0 +1,230 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+package com.sun.stylesheet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.sun.stylesheet.css.CompoundSelector;
+import com.sun.stylesheet.css.SimpleSelector;
+
+/**
+ * Buckets the rules of a {@link Stylesheet} by the rightmost simple selector 
+ * of each of their selectors, so that only rules which could possibly match 
+ * a node need to be tested against it.  Each selector is filed under its most 
+ * specific key:  its ID if it has one, otherwise its style class, otherwise 
+ * its Java class name.  Selectors with none of these (and selectors which are 
+ * not {@link SimpleSelector SimpleSelectors} or {@link CompoundSelector 
+ * CompoundSelectors}) are filed as universal and tested against every node.
+ * <p>
+ * A <code>RuleIndex</code> is a snapshot of the rule list it was built from, 
+ * and must be rebuilt when the rules change.
+ */
+class RuleIndex {
+    private static final int[] EMPTY = new int[0];
+    
+    private int ruleCount;
+    private boolean sharable = true;
+    private int[] universal;
+    private Map<String, int[]> ids;
+    private Map<String, int[]> styleClasses;
+    private Map<String, int[]> javaClassNames;
+    
+    /** 
+     * Caches the merged Java class bucket for each class encountered, which 
+     * includes the buckets of all of its superclasses.
+     */
+    private Map<Class, int[]> classCache = new WeakHashMap<Class, int[]>();
+    
+    
+    /**
+     * Builds an index over the specified rules.  The positions of the rules 
+     * within the list are the indices returned by {@link #getCandidates}.
+     *
+     *@param rules the rules to index
+     */
+    public RuleIndex(List<Rule> rules) {
+        ruleCount = rules.size();
+        List<Integer> universal = new ArrayList<Integer>();
+        Map<String, List<Integer>> ids = new HashMap<String, List<Integer>>();
+        Map<String, List<Integer>> styleClasses = 
+                new HashMap<String, List<Integer>>();
+        Map<String, List<Integer>> javaClassNames = 
+                new HashMap<String, List<Integer>>();
+        for (int i = 0; i < ruleCount; i++) {
+            for (Selector selector : rules.get(i).getSelectors()) {
+                if (selector instanceof CompoundSelector) {
+                    Selector[] selectors = 
+                            ((CompoundSelector) selector).getSelectors();
+                    selector = selectors[selectors.length - 1];
+                }
+                if (selector instanceof SimpleSelector) {
+                    SimpleSelector simple = (SimpleSelector) selector;
+                    if (simple.getId() != null)
+                        add(ids, simple.getId(), i);
+                    else if (simple.getStyleClass() != null)
+                        add(styleClasses, simple.getStyleClass(), i);
+                    else if (simple.getJavaClassName() != null)
+                        add(javaClassNames, simple.getJavaClassName(), i);
+                    else
+                        add(universal, i);
+                }
+                else {
+                    add(universal, i);
+                    sharable = false;
+                }
+            }
+        }
+        this.universal = toArray(universal);
+        this.ids = toArrays(ids);
+        this.styleClasses = toArrays(styleClasses);
+        this.javaClassNames = toArrays(javaClassNames);
+    }
+    
+    
+    private static void add(Map<String, List<Integer>> buckets, String key, 
+            int index) {
+        List<Integer> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Integer>();
+            buckets.put(key, bucket);
+        }
+        add(bucket, index);
+    }
+    
+    
+    // rules are visited in order, so a duplicate (a rule with several 
+    // selectors sharing a key) can only ever be the last entry
+    private static void add(List<Integer> bucket, int index) {
+        if (bucket.isEmpty() || bucket.get(bucket.size() - 1) != index)
+            bucket.add(index);
+    }
+    
+    
+    private static int[] toArray(List<Integer> bucket) {
+        int[] result = new int[bucket.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = bucket.get(i);
+        return result;
+    }
+    
+    
+    private static Map<String, int[]> toArrays(
+            Map<String, List<Integer>> buckets) {
+        Map<String, int[]> result = new HashMap<String, int[]>();
+        for (Map.Entry<String, List<Integer>> e : buckets.entrySet())
+            result.put(e.getKey(), toArray(e.getValue()));
+        return result;
+    }
+    
+    
+    private static void set(BitSet candidates, int[] bucket) {
+        if (bucket != null) {
+            for (int i = 0; i < bucket.length; i++)
+                candidates.set(bucket[i]);
+        }
+    }
+    
+    
+    /**
+     * Returns the indices of all rules filed under the class names of the 
+     * specified class or any of its superclasses.  Class names are matched 
+     * the same way {@link SimpleSelector} matches them:  against both the 
+     * fully-qualified and the simple (packageless) name.
+     */
+    private int[] getClassBucket(Class cls) {
+        int[] result = classCache.get(cls);
+        if (result == null) {
+            BitSet candidates = new BitSet(ruleCount);
+            for (Class c = cls; c != null; c = c.getSuperclass()) {
+                String name = c.getName();
+                set(candidates, javaClassNames.get(name));
+                int dot = name.lastIndexOf('.');
+                if (dot != -1)
+                    set(candidates, javaClassNames.get(
+                            name.substring(dot + 1)));
+            }
+            if (candidates.isEmpty())
+                result = EMPTY;
+            else {
+                result = new int[candidates.cardinality()];
+                int j = 0;
+                for (int i = candidates.nextSetBit(0); i >= 0; 
+                        i = candidates.nextSetBit(i + 1))
+                    result[j++] = i;
+            }
+            classCache.put(cls, result);
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Returns <code>true</code> if every selector in the indexed rules is a 
+     * {@link SimpleSelector} or {@link CompoundSelector}.  Such selectors 
+     * depend only on a node's ID, style class, Java classes and ancestors, so 
+     * siblings which agree on the first three are guaranteed to match the same 
+     * rules.
+     *
+     *@return <code>true</code> if match results can be shared among siblings
+     */
+    public boolean isSharable() {
+        return sharable;
+    }
+    
+    
+    /**
+     * Returns the indices of all rules which might match the specified node.  
+     * Rules which are not returned are guaranteed not to match;  returned rules 
+     * must still be checked with {@link Rule#matches}.  Iterating the result 
+     * with <code>nextSetBit</code> visits the rules in stylesheet order.
+     *
+     *@param node the node to find candidate rules for
+     *@return the indices of the candidate rules
+     */
+    public BitSet getCandidates(Styleable node) {
+        BitSet result = new BitSet(ruleCount);
+        set(result, universal);
+        if (!ids.isEmpty()) {
+            String id = node.getID();
+            if (id != null)
+                set(result, ids.get(id));
+        }
+        if (!styleClasses.isEmpty()) {
+            String styleClass = node.getStyleClass();
+            if (styleClass != null)
+                set(result, styleClasses.get(styleClass));
+        }
+        if (!javaClassNames.isEmpty()) {
+            Class[] classes = node.getObjectClasses();
+            for (int i = 0; i < classes.length; i++)
+                set(result, getClassBucket(classes[i]));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+package com.sun.stylesheet;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the rule matches of recently styled siblings, so that a node with 
+ * the same Java classes, ID and style class as one of them can reuse its 
+ * matches instead of re-running every selector.  Because the nodes share a 
+ * parent, they also share all ancestors, and so (as long as the stylesheet only 
+ * contains selectors which depend on nothing else -- see {@link 
+ * RuleIndex#isSharable}) they are guaranteed to match the same rules.
+ * <p>
+ * A cache is only valid for the children of a single parent, and only for the 
+ * duration of a single pass over them.
+ */
+class StyleSharingCache {
+    private static final int SIZE = 8;
+    
+    /** The match results of a single styled node. */
+    static class Entry {
+        private Class[] classes;
+        private String id;
+        private String styleClass;
+        private Styleable node;
+        private int[] ruleIndices;
+        private Match[][] matches;
+        
+        
+        Entry(Styleable node, Class[] classes, String id, String styleClass,
+                int[] ruleIndices, Match[][] matches) {
+            this.node = node;
+            this.classes = classes;
+            this.id = id;
+            this.styleClass = styleClass;
+            this.ruleIndices = ruleIndices;
+            this.matches = matches;
+        }
+        
+        
+        /** Returns the number of rules which matched the node. */
+        int getRuleCount() {
+            return ruleIndices.length;
+        }
+        
+        
+        /** Returns the stylesheet index of the i'th matching rule. */
+        int getRuleIndex(int i) {
+            return ruleIndices[i];
+        }
+        
+        
+        /** 
+         * Returns the matches of the i'th matching rule, adjusted to apply to 
+         * <code>target</code>.  Pseudoclasses which were being watched on the 
+         * original node are moved to the target;  pseudoclasses watched on 
+         * ancestors are shared as-is.
+         */
+        Match[] getMatches(int i, Styleable target) {
+            Match[] result = matches[i];
+            if (target == node)
+                return result;
+            for (int j = 0; j < result.length; j++) {
+                Match.Pseudoclass[] pseudoclasses = result[j].getPseudoclasses();
+                if (pseudoclasses != null && refersTo(pseudoclasses, node)) {
+                    if (result == matches[i])
+                        result = result.clone();
+                    result[j] = retarget(result[j], target);
+                }
+            }
+            return result;
+        }
+        
+        
+        private boolean refersTo(Match.Pseudoclass[] pseudoclasses, 
+                Styleable styleable) {
+            for (int i = 0; i < pseudoclasses.length; i++) {
+                if (pseudoclasses[i].getStyleable() == styleable)
+                    return true;
+            }
+            return false;
+        }
+        
+        
+        private Match retarget(Match match, Styleable target) {
+            Match.Pseudoclass[] pseudoclasses = match.getPseudoclasses().clone();
+            for (int i = 0; i < pseudoclasses.length; i++) {
+                if (pseudoclasses[i].getStyleable() == node)
+                    pseudoclasses[i] = new Match.Pseudoclass(
+                            pseudoclasses[i].getName(), target);
+            }
+            return new Match(pseudoclasses, match.getIdCount(), 
+                    match.getStyleClassCount(), match.getJavaClassWeight());
+        }
+    }
+    
+    
+    private Entry[] entries = new Entry[SIZE];
+    private int next;
+    
+    
+    /**
+     * Returns the entry for a previously styled sibling with the same Java 
+     * classes, ID and style class, or <code>null</code> if there is none.
+     */
+    Entry get(Class[] classes, String id, String styleClass) {
+        for (int i = 0; i < SIZE; i++) {
+            Entry e = entries[i];
+            if (e == null)
+                break;
+            if (equal(e.id, id) && equal(e.styleClass, styleClass) && 
+                    Arrays.equals(e.classes, classes))
+                return e;
+        }
+        return null;
+    }
+    
+    
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+    
+    
+    /** Adds an entry, replacing the oldest one if the cache is full. */
+    void put(Entry entry) {
+        entries[next] = entry;
+        next = (next + 1) % SIZE;
+    }
+}
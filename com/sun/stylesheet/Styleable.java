@@ -159,6 +159,40 @@ public interface Styleable {
      */
     Styleable[] getStyleableChildren();
     
+    /**
+     * Returns the number of children this object has.  Together with {@link 
+     * #getStyleableChild} this allows the children to be visited without 
+     * allocating an array, and should be preferred to {@link 
+     * #getStyleableChildren} for traversals.  The default implementation 
+     * counts the array returned by <code>getStyleableChildren</code>, and 
+     * should be overridden by objects which can do better.  As the default 
+     * <code>getStyleableChild</code> fetches the whole array on every call, 
+     * the library's own traversals fetch the array once instead for objects 
+     * which override neither method.
+     *
+     *@return the number of children
+     */
+    default int getStyleableChildCount() {
+        Styleable[] children = getStyleableChildren();
+        return children != null ? children.length : 0;
+    }
+    
+    /**
+     * Returns the child at the specified index, subject to the same rules as 
+     * {@link #getStyleableChildren}.
+     *
+     *@param index the index of the child, between zero and 
+     *      <code>getStyleableChildCount() - 1</code>
+     *@return the child at the specified index
+     *@throws IndexOutOfBoundsException if the index is out of range
+     */
+    default Styleable getStyleableChild(int index) {
+        Styleable[] children = getStyleableChildren();
+        if (children == null)
+            throw new IndexOutOfBoundsException("index: " + index);
+        return children[index];
+    }
+    
     /**
      * Returns the parent of this object.  When <code>Styleable</code> wrappers 
      * are used, it is essential that the same wrapper instance always be used 
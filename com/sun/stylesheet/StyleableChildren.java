@@ -0,0 +1,123 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.lang.reflect.Method;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.styleable.StyleSupport;
+
+/**
+ * The children of a node, as seen by traversals.  Nodes which implement 
+ * {@link Styleable#getStyleableChildCount} and {@link 
+ * Styleable#getStyleableChild} (or, for {@link DefaultStyleable}, whose 
+ * <code>StyleSupport</code> does) are read through those methods without 
+ * allocating an array.  The default implementations of the indexed methods 
+ * fetch the whole array on every call, so for other nodes the array is 
+ * fetched once and wrapped instead.
+ * <p>
+ * The indexed methods are only trusted when they are declared in the class 
+ * which declares the most specific <code>getStyleableChildren</code>, or in 
+ * a subclass of it.  A subclass which overrides only 
+ * <code>getStyleableChildren</code> would otherwise have its children read 
+ * through the indexed methods it inherited, which know nothing of the 
+ * override.
+ */
+final class StyleableChildren extends AbstractList<Styleable> {
+    // whether a Styleable or StyleSupport class implements the indexed methods
+    // alongside its getStyleableChildren
+    private static final ClassValue<Boolean> indexed = 
+            new ClassValue<Boolean>() {
+        protected Boolean computeValue(Class<?> cls) {
+            try {
+                if (StyleSupport.class.isAssignableFrom(cls)) {
+                    Method children = cls.getMethod("getStyleableChildren", 
+                            Object.class);
+                    return isOverridden(children, cls.getMethod(
+                            "getStyleableChildCount", Object.class)) && 
+                            isOverridden(children, cls.getMethod(
+                                "getStyleableChild", Object.class, int.class));
+                }
+                Method children = cls.getMethod("getStyleableChildren");
+                return isOverridden(children, 
+                            cls.getMethod("getStyleableChildCount")) && 
+                        isOverridden(children, 
+                            cls.getMethod("getStyleableChild", int.class));
+            }
+            catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+    
+    private final Styleable node;
+    
+    private StyleableChildren(Styleable node) {
+        this.node = node;
+    }
+    
+    
+    /**
+     * Returns <code>true</code> if an indexed method is declared by the class 
+     * declaring <code>children</code>, or by a subclass of it, rather than 
+     * defaulted from the interface.
+     */
+    private static boolean isOverridden(Method children, Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        return declaringClass != Styleable.class && 
+                declaringClass != StyleSupport.class && 
+                children.getDeclaringClass().isAssignableFrom(declaringClass);
+    }
+    
+    
+    /**
+     * Returns the children of the node.  The list must not be kept beyond the 
+     * traversal it was obtained for.
+     */
+    static List<Styleable> of(Styleable node) {
+        Class cls = node instanceof DefaultStyleable ? 
+                ((DefaultStyleable) node).getStyleSupport().getClass() : 
+                node.getClass();
+        if (indexed.get(cls))
+            return new StyleableChildren(node);
+        Styleable[] children = node.getStyleableChildren();
+        return children != null ? Arrays.asList(children) : 
+                Collections.<Styleable>emptyList();
+    }
+    
+    
+    public Styleable get(int index) {
+        return node.getStyleableChild(index);
+    }
+    
+    
+    public int size() {
+        return node.getStyleableChildCount();
+    }
+}
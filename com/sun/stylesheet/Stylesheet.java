@@ -25,6 +25,7 @@
 
 import java.awt.AWTEvent;
 import java.awt.AWTPermission;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.Window;
@@ -39,13 +40,16 @@ import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.sun.stylesheet.css.AncestorFilter;
 import com.sun.stylesheet.styleable.DefaultStyleable;
 import com.sun.stylesheet.types.TypeManager;
 
@@ -64,6 +68,16 @@ import com.sun.stylesheet.types.TypeManager;
  * Once created, stylesheets can be freely modified, but the modifications do
  * not affect styled objects until a subsequent {@link #applyTo} or
  * {@link #reapply}.
+ * <p>
+ * Components added to an already styled container are styled automatically.
+ * When they are added on the event dispatch thread, styling waits until the
+ * current event has been processed, so that components added together are
+ * styled together. Code which adds components and then calls
+ * <code>pack()</code> or measures preferred sizes within the same event
+ * should call
+ * {@link com.sun.stylesheet.swing.ComponentStyleSupport#flushPendingStyling}
+ * first, or it will see the unstyled sizes. Windows are not re-packed (see {@link #processWindow})
+ * when components added to them are styled.
  * 
  *@author Ethan Nicholas
  */
@@ -89,34 +103,70 @@ public class Stylesheet {
 	 */
 	public transient Map<Styleable, Object> roots = new WeakHashMap<Styleable, Object>();
 
-	private List<Rule> rules = new ArrayList<Rule>() {
+	/**
+	 * Rule list which assigns itself as the stylesheet of added rules, and
+	 * counts modifications (including <code>set</code>) so that the rule index
+	 * can tell when it is out of date.
+	 */
+	@SuppressWarnings("serial") // never serialized
+	private class RuleList extends ArrayList<Rule> {
+		int getModCount() {
+			return modCount;
+		}
+
+		/**
+		 * Rejects additions which would give rules orders that
+		 * {@link Priority#pack} saturates, rather than letting them tie.
+		 */
+		private void checkCapacity(int added) {
+			if (size() + added > Priority.MAX_ORDER + 1)
+				throw new IllegalArgumentException("a stylesheet may contain at most "
+					+ (Priority.MAX_ORDER + 1) + " rules");
+		}
+
 		public boolean add(Rule rule) {
+			checkCapacity(1);
 			rule.setStylesheet(Stylesheet.this);
 			return super.add(rule);
 		}
 
 		public void add(int index, Rule rule) {
+			checkCapacity(1);
 			rule.setStylesheet(Stylesheet.this);
 			super.add(index, rule);
 		}
 
 		public Rule set(int index, Rule rule) {
 			rule.setStylesheet(Stylesheet.this);
+			modCount++;
 			return super.set(index, rule);
 		}
 
 		public boolean addAll(Collection<? extends Rule> c) {
+			checkCapacity(c.size());
 			for (Rule r : c)
 				r.setStylesheet(Stylesheet.this);
 			return super.addAll(c);
 		}
 
 		public boolean addAll(int index, Collection<? extends Rule> c) {
+			checkCapacity(c.size());
 			for (Rule r : c)
 				r.setStylesheet(Stylesheet.this);
 			return super.addAll(index, c);
 		}
-	};
+	}
+
+	private RuleList rules = new RuleList();
+
+	/** Index of rules by rightmost selector, rebuilt when the rules change. */
+	private transient RuleIndex ruleIndex;
+
+	private transient int ruleIndexModCount;
+
+	private final AtomicLong styleSharingHits = new AtomicLong();
+
+	private final AtomicLong styleSharingMisses = new AtomicLong();
 
 	/** True to automatically re-pack too-small windows. */
 	private boolean autopack = true;
@@ -125,6 +175,8 @@ public class Stylesheet {
 
 	private boolean supportsPriority = true;
 
+	private boolean lazy;
+
 	private int priority;
 
 	/** Creates a new stylesheet which contains no rules. */
@@ -158,7 +210,10 @@ public class Stylesheet {
 	/**
 	 * Returns the stylesheet's rules. The list may be freely modified, but
 	 * modifications will have no effect on styled objects until a subsequent
-	 * call to {@link #applyTo or #reapply}.
+	 * call to {@link #applyTo or #reapply}. Adding more than
+	 * {@link Priority#MAX_ORDER}<code> + 1</code> rules throws an
+	 * <code>IllegalArgumentException</code>, as their order could not be
+	 * packed.
 	 * 
 	 *@return the current list of rules
 	 *@see #applyTo
@@ -260,10 +315,16 @@ public class Stylesheet {
 	 */
 	public void applyTo(Object root) throws StylesheetException {
 		Styleable styleable = TypeManager.getStyleable(root);
-		if (getRoots().containsKey(styleable))
-			removeFrom(styleable);
-		roots.put(styleable, dummy);
-		applyTo(styleable, 0);
+		// properties which are removed and then reapplied are only set once
+		PropertyManager.beginBatch();
+		try {
+			if (getRoots().containsKey(styleable))
+				removeFrom(styleable);
+			roots.put(styleable, dummy);
+			applyTo(styleable, 0);
+		} finally {
+			PropertyManager.endBatch();
+		}
 
 		if (styleable instanceof DefaultStyleable) {
 			Object object = ((DefaultStyleable) styleable).getBaseObject();
@@ -277,18 +338,173 @@ public class Stylesheet {
 
 	/** INTERNAL USE ONLY. */
 	public void applyTo(Styleable node, int depth) throws StylesheetException {
+		AncestorFilter filter = AncestorFilter.getInstance();
+		PropertyManager.beginBatch();
+		try {
+			applyTo(node, node.getStyleableParent(), depth, filter, null);
+		} finally {
+			// don't keep the styled tree reachable from the thread
+			filter.clear();
+			PropertyManager.endBatch();
+		}
+	}
+
+	/**
+	 * INTERNAL USE ONLY. Applies the stylesheet to several siblings at once.
+	 */
+	public void applyTo(Styleable[] nodes, int depth) throws StylesheetException {
+		if (nodes.length == 0)
+			return;
+		AncestorFilter filter = AncestorFilter.getInstance();
+		StyleSharingCache siblings = nodes.length > 1 ? new StyleSharingCache() : null;
+		PropertyManager.beginBatch();
+		try {
+			Styleable parent = nodes[0].getStyleableParent();
+			for (Styleable node : nodes)
+				applyTo(node, parent, depth, filter, siblings);
+		} finally {
+			filter.clear();
+			PropertyManager.endBatch();
+		}
+	}
+
+	private void applyTo(Styleable node, Styleable parent, int depth, AncestorFilter filter,
+			StyleSharingCache siblings) throws StylesheetException {
 		if (debugWindow != null)
 			debugWindow.stylesheetApplied(this, node);
 		node.addStylesheet(this, depth);
 		PropertyManager.cascadeTo(node, false);
-		for (int i = 0; i < rules.size(); i++)
-			rules.get(i).applyTo(node, depth, i);
+		filter.prepare(node, parent);
+		RuleIndex index = getRuleIndex();
+		if (siblings != null && index.isSharable())
+			applyRules(node, depth, index, siblings);
+		else {
+			BitSet candidates = index.getCandidates(node);
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+				rules.get(i).applyTo(node, depth, i);
+		}
+
+		List<Styleable> children = StyleableChildren.of(node);
+		int childCount = children.size();
+		if (childCount > 0) {
+			StyleSharingCache childCache = childCount > 1 ? new StyleSharingCache() : null;
+			filter.push(node, parent);
+			for (int i = 0; i < children.size(); i++) {
+				Styleable child = children.get(i);
+				Component hidden = lazy ? LazyStyler.getHiddenComponent(child) : null;
+				if (hidden != null)
+					LazyStyler.skip(hidden, this, depth + 1);
+				else
+					applyTo(child, node, depth + 1, filter, childCache);
+			}
+			filter.pop(node);
+		}
+	}
+
+	/**
+	 * Applies the matching rules to a node, reusing the matches of an
+	 * equivalent sibling if one has already been styled.
+	 */
+	private void applyRules(Styleable node, int depth, RuleIndex index,
+			StyleSharingCache siblings) throws StylesheetException {
+		Class[] classes = node.getObjectClasses();
+		String id = node.getID();
+		String styleClass = node.getStyleClass();
+		StyleSharingCache.Entry shared = siblings.get(classes, id, styleClass);
+		if (shared != null) {
+			styleSharingHits.incrementAndGet();
+			for (int i = 0; i < shared.getRuleCount(); i++) {
+				int ruleIndex = shared.getRuleIndex(i);
+				rules.get(ruleIndex).applyTo(node, shared.getMatches(i, node), depth, ruleIndex);
+			}
+		} else {
+			styleSharingMisses.incrementAndGet();
+			BitSet candidates = index.getCandidates(node);
+			int[] ruleIndices = new int[candidates.cardinality()];
+			Match[][] matches = new Match[ruleIndices.length][];
+			int count = 0;
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				Rule rule = rules.get(i);
+				Match[] ruleMatches = rule.matches(node);
+				if (ruleMatches != null) {
+					ruleIndices[count] = i;
+					matches[count] = ruleMatches;
+					count++;
+				}
+				rule.applyTo(node, ruleMatches, depth, i);
+			}
+			siblings.put(new StyleSharingCache.Entry(node, classes, id, styleClass, Arrays
+					.copyOf(ruleIndices, count), Arrays.copyOf(matches, count)));
+		}
+	}
+
+	/**
+	 * Returns the number of nodes which were styled by reusing the rule
+	 * matches of an equivalent sibling rather than by running the selectors.
+	 * 
+	 *@return the number of style sharing cache hits
+	 *@see #getStyleSharingMisses
+	 */
+	public long getStyleSharingHits() {
+		return styleSharingHits.get();
+	}
+
+	/**
+	 * Returns the number of nodes which were eligible for style sharing, but
+	 * had no equivalent previously styled sibling and so ran the selectors.
+	 * 
+	 *@return the number of style sharing cache misses
+	 *@see #getStyleSharingHits
+	 */
+	public long getStyleSharingMisses() {
+		return styleSharingMisses.get();
+	}
 
-		Styleable[] children = node.getStyleableChildren();
-		if (children != null) {
-			for (Styleable child : children)
-				applyTo(child, depth + 1);
+	/**
+	 * Returns the index used to find candidate rules for a node, rebuilding it
+	 * if the rule list has been modified since it was last built.
+	 */
+	private RuleIndex getRuleIndex() {
+		if (ruleIndex == null || ruleIndexModCount != rules.getModCount()) {
+			ruleIndex = new RuleIndex(rules);
+			ruleIndexModCount = rules.getModCount();
 		}
+		return ruleIndex;
+	}
+
+	/**
+	 * Returns <code>true</code> if this stylesheet is lazy. See
+	 * {@link #setLazy} for details.
+	 * 
+	 *@return <code>true</code> if hidden components are styled when shown
+	 *@see #setLazy
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Sets whether this stylesheet is lazy. A lazy stylesheet does not style
+	 * components which are not visible, such as the components of unselected
+	 * tabs in a <code>JTabbedPane</code> or of hidden <code>CardLayout</code>
+	 * cards, or any of their descendents. Instead each such subtree is styled
+	 * the first time it is shown. This can greatly reduce the cost of styling
+	 * a window in which most components are never looked at.
+	 * <p>
+	 * As the hidden components are styled only as they are shown, any layout
+	 * which takes invisible components into account (<code>CardLayout</code>
+	 * does, for example) will size them unstyled until then.
+	 * <p>
+	 * Changes to this setting only effect subsequent applications of the
+	 * stylesheet; existing applications are left unchanged. The default value
+	 * is <code>false</code>.
+	 * 
+	 *@param lazy
+	 *            whether or not to put off styling hidden components
+	 *@see #isLazy
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
 	}
 
 	/**
@@ -359,7 +575,12 @@ public class Stylesheet {
 		Styleable styleable = TypeManager.getStyleable(root);
 		if (debugWindow != null)
 			debugWindow.stylesheetRemoved(this, styleable);
-		PropertyManager.removeStylesheet(this, styleable);
+		PropertyManager.beginBatch();
+		try {
+			PropertyManager.removeStylesheet(this, styleable);
+		} finally {
+			PropertyManager.endBatch();
+		}
 	}
 
 	/**
@@ -431,6 +652,13 @@ public class Stylesheet {
 	 * displayed by {@link javax.swing.JOptionPane} which are not convenient to
 	 * manually style.
 	 * <p>
+	 * Components added to a styled window on the event dispatch thread are
+	 * styled once the current event has been processed, and the window is not
+	 * re-packed for them. Call
+	 * {@link com.sun.stylesheet.swing.ComponentStyleSupport#flushPendingStyling}
+	 * before <code>pack()</code> to size a window by the styles of components
+	 * which were just added to it.
+	 * <p>
 	 * This call requires the "listenToAllAWTEvents" and "setGlobalStylesheet"
 	 * {@link AWTPermission AWTPermissions}. A <code>null</code> parameter may
 	 * be used to remove the global stylesheet.
@@ -509,6 +737,7 @@ public class Stylesheet {
 		for (int i = 0; i < ruleCount; i++)
 			rules[i] = Rule.readBinary(dataIn);
 		Stylesheet result = new Stylesheet(rules);
+		result.setLazy((flags & 8) != 0);
 		result.setAutopackingEnabled((flags & 4) != 0);
 		result.setStatic((flags & 2) != 0);
 		result.setSupportsPriority((flags & 1) != 0);
@@ -519,7 +748,8 @@ public class Stylesheet {
 	public void writeBinary(OutputStream out) throws IOException {
 		DataOutputStream dataOut = new DataOutputStream(out);
 		dataOut.writeByte(0);
-		dataOut.writeByte((autopack ? 4 : 0) | (isStatic ? 2 : 0) | (supportsPriority ? 1 : 0));
+		dataOut.writeByte((lazy ? 8 : 0) | (autopack ? 4 : 0) | (isStatic ? 2 : 0)
+			| (supportsPriority ? 1 : 0));
 		dataOut.writeByte(getPriority());
 		dataOut.writeShort(rules.size());
 		for (Rule r : rules)
@@ -569,4 +799,4 @@ public class Stylesheet {
 	public static DebugWindow getDebugWindow() {
 		return debugWindow;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
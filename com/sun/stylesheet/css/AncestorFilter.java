@@ -0,0 +1,280 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+package com.sun.stylesheet.css;
+
+import com.sun.stylesheet.Styleable;
+
+/**
+ * A counting Bloom filter over the IDs, style classes and Java class names of 
+ * the ancestors of the node currently being styled.  {@link CompoundSelector} 
+ * consults it to reject selectors whose ancestor components name an ID, style 
+ * class or Java class which no ancestor has, without walking the parent chain.
+ * <p>
+ * The filter is maintained by {@link com.sun.stylesheet.Stylesheet} as it 
+ * traverses a tree:  ancestors are pushed on the way down and popped on the way 
+ * back up.  Each thread has its own filter.  Like any Bloom filter it may 
+ * report false positives, but never false negatives, so a selector it does not 
+ * reject must still be matched normally.
+ */
+public class AncestorFilter {
+    private static final int BITS = 12;
+    private static final int MASK = (1 << BITS) - 1;
+    
+    private static final int ID = 1;
+    private static final int STYLE_CLASS = 2;
+    private static final int JAVA_CLASS = 3;
+    
+    private static final ThreadLocal<AncestorFilter> instances = 
+            new ThreadLocal<AncestorFilter>() {
+        protected AncestorFilter initialValue() {
+            return new AncestorFilter();
+        }
+    };
+    
+    /** 
+     * Caches the key hashes of the fully-qualified and simple names of each 
+     * class and all of its superclasses. 
+     */
+    private static final ClassValue<int[]> classKeys = new ClassValue<int[]>() {
+        protected int[] computeValue(Class type) {
+            int count = 0;
+            for (Class c = type; c != null; c = c.getSuperclass())
+                count++;
+            int[] result = new int[count * 2];
+            int i = 0;
+            for (Class c = type; c != null; c = c.getSuperclass()) {
+                String name = c.getName();
+                result[i++] = hash(JAVA_CLASS, name);
+                result[i++] = hash(JAVA_CLASS, 
+                        name.substring(name.lastIndexOf(".") + 1));
+            }
+            return result;
+        }
+    };
+    
+    private int[] counters = new int[1 << BITS];
+    
+    /** The ancestors currently in the filter, outermost first. */
+    private Styleable[] nodes = new Styleable[16];
+    
+    /** The number of keys each entry in <code>nodes</code> added. */
+    private int[] keyCounts = new int[16];
+    
+    /** The keys added by all entries in <code>nodes</code>, in order. */
+    private int[] keys = new int[256];
+    
+    private int depth;
+    private int keyCount;
+    
+    /** The node whose ancestors the filter currently holds. */
+    private Styleable current;
+    
+    
+    private AncestorFilter() {
+    }
+    
+    
+    /** 
+     * Returns the filter for the calling thread.
+     *
+     *@return the calling thread's filter
+     */
+    public static AncestorFilter getInstance() {
+        return instances.get();
+    }
+    
+    
+    private static int hash(int kind, String key) {
+        return (key.hashCode() * 31 + kind) * 0x9E3779B9;
+    }
+    
+    
+    static int idKey(String id) {
+        return hash(ID, id);
+    }
+    
+    
+    static int styleClassKey(String styleClass) {
+        return hash(STYLE_CLASS, styleClass);
+    }
+    
+    
+    static int javaClassKey(String javaClassName) {
+        return hash(JAVA_CLASS, javaClassName);
+    }
+    
+    
+    private Styleable top() {
+        return depth > 0 ? nodes[depth - 1] : null;
+    }
+    
+    
+    private void addKey(int key) {
+        if (keyCount == keys.length) {
+            int[] tmp = new int[keys.length * 2];
+            System.arraycopy(keys, 0, tmp, 0, keyCount);
+            keys = tmp;
+        }
+        keys[keyCount++] = key;
+        counters[(key >>> 20) & MASK]++;
+        counters[(key >>> 8) & MASK]++;
+    }
+    
+    
+    private void removeKey(int key) {
+        counters[(key >>> 20) & MASK]--;
+        counters[(key >>> 8) & MASK]--;
+    }
+    
+    
+    private void pushEntry(Styleable node) {
+        if (depth == nodes.length) {
+            Styleable[] tmpNodes = new Styleable[depth * 2];
+            System.arraycopy(nodes, 0, tmpNodes, 0, depth);
+            nodes = tmpNodes;
+            int[] tmpCounts = new int[depth * 2];
+            System.arraycopy(keyCounts, 0, tmpCounts, 0, depth);
+            keyCounts = tmpCounts;
+        }
+        int start = keyCount;
+        String id = node.getID();
+        if (id != null)
+            addKey(idKey(id));
+        String styleClass = node.getStyleClass();
+        if (styleClass != null)
+            addKey(styleClassKey(styleClass));
+        Class[] classes = node.getObjectClasses();
+        for (int i = 0; i < classes.length; i++) {
+            int[] classKeys = AncestorFilter.classKeys.get(classes[i]);
+            for (int j = 0; j < classKeys.length; j++)
+                addKey(classKeys[j]);
+        }
+        nodes[depth] = node;
+        keyCounts[depth] = keyCount - start;
+        depth++;
+    }
+    
+    
+    private void popEntry() {
+        depth--;
+        int count = keyCounts[depth];
+        for (int i = 0; i < count; i++)
+            removeKey(keys[--keyCount]);
+        nodes[depth] = null;
+    }
+    
+    
+    /**
+     * Empties the filter and releases all references to styled nodes.
+     */
+    public void clear() {
+        while (depth > 0)
+            popEntry();
+        current = null;
+    }
+    
+    
+    // makes the filter hold exactly parent and its ancestors
+    private void ensureTop(Styleable parent) {
+        if (top() != parent) {
+            clear();
+            if (parent != null) {
+                int count = 0;
+                for (Styleable a = parent; a != null; a = a.getStyleableParent())
+                    count++;
+                Styleable[] chain = new Styleable[count];
+                for (Styleable a = parent; a != null; a = a.getStyleableParent())
+                    chain[--count] = a;
+                for (Styleable a : chain)
+                    pushEntry(a);
+            }
+        }
+    }
+    
+    
+    /**
+     * Prepares the filter to match selectors against <code>node</code>, 
+     * rebuilding it from the parent chain if it does not currently hold 
+     * exactly <code>parent</code> and its ancestors.
+     *
+     *@param node the node about to be matched
+     *@param parent the node's parent
+     */
+    public void prepare(Styleable node, Styleable parent) {
+        ensureTop(parent);
+        current = node;
+    }
+    
+    
+    /**
+     * Adds a node to the filter before its children are styled.
+     *
+     *@param node the node whose children are about to be styled
+     *@param parent the node's parent
+     */
+    public void push(Styleable node, Styleable parent) {
+        ensureTop(parent);
+        pushEntry(node);
+        current = null;
+    }
+    
+    
+    /**
+     * Removes a node from the filter after its children have been styled.  
+     * Has no effect if the node is no longer the innermost ancestor in the 
+     * filter, as happens when styling re-enters the stylesheet for another 
+     * part of the tree.
+     *
+     *@param node the node previously passed to {@link #push}
+     */
+    public void pop(Styleable node) {
+        if (top() == node)
+            popEntry();
+        current = null;
+    }
+    
+    
+    /**
+     * Returns <code>true</code> if the filter currently holds the ancestors 
+     * of <code>node</code>.
+     */
+    boolean isPreparedFor(Styleable node) {
+        return node == current;
+    }
+    
+    
+    /**
+     * Returns <code>false</code> if any of the keys is definitely not present 
+     * on any ancestor.
+     */
+    boolean mightContainAll(int[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            int key = keys[i];
+            if (counters[(key >>> 20) & MASK] == 0 || 
+                    counters[(key >>> 8) & MASK] == 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -46,6 +46,12 @@ public class CompoundSelector implements Selector {
     private Selector[] selectors;
     private Relationship[] relationships;
     
+    /** 
+     * {@link AncestorFilter} keys which must be present on some ancestor for 
+     * this selector to match.
+     */
+    private int[] ancestorKeys;
+    
     /**
      * Constructs a new <code>CompoundSelector</code>.  The selector is 
      * composed of one or more <code>Selectors</code>, along with an array of 
@@ -79,6 +85,28 @@ public class CompoundSelector implements Selector {
     }
     
     
+    /**
+     * Returns the selectors that make up this compound selector, from the 
+     * outermost ancestor to the selector matching the node itself.
+     *
+     *@return the component selectors
+     */
+    public Selector[] getSelectors() {
+        return selectors;
+    }
+    
+    
+    /**
+     * Returns the relationships between the component selectors.  There is 
+     * exactly one less <code>Relationship</code> than there are selectors.
+     *
+     *@return the relationships between the selectors
+     */
+    public Relationship[] getRelationships() {
+        return relationships;
+    }
+    
+    
     /**
      * Returns a {@link Match} if this selector matches the specified object, or 
      * <code>null</code> otherwise.
@@ -88,10 +116,43 @@ public class CompoundSelector implements Selector {
      *      otherwise
      */
     public Match matches(Styleable node) {
+        if (selectors.length > 1) {
+            AncestorFilter filter = AncestorFilter.getInstance();
+            if (filter.isPreparedFor(node) && 
+                    !filter.mightContainAll(getAncestorKeys()))
+                return null;
+        }
         return matches(node, selectors.length - 1);
     }
     
     
+    // collects the IDs, style classes and Java class names required of 
+    // ancestors by every selector but the last
+    private int[] getAncestorKeys() {
+        if (ancestorKeys == null) {
+            int count = 0;
+            int[] keys = new int[(selectors.length - 1) * 3];
+            for (int i = 0; i < selectors.length - 1; i++) {
+                if (selectors[i] instanceof SimpleSelector) {
+                    SimpleSelector selector = (SimpleSelector) selectors[i];
+                    if (selector.getId() != null)
+                        keys[count++] = AncestorFilter.idKey(selector.getId());
+                    if (selector.getStyleClass() != null)
+                        keys[count++] = AncestorFilter.styleClassKey(
+                                selector.getStyleClass());
+                    if (selector.getJavaClassName() != null)
+                        keys[count++] = AncestorFilter.javaClassKey(
+                                selector.getJavaClassName());
+                }
+            }
+            int[] result = new int[count];
+            System.arraycopy(keys, 0, result, 0, count);
+            ancestorKeys = result;
+        }
+        return ancestorKeys;
+    }
+    
+    
     // checks for a match against a subset of the selectors, from 0 to 
     // lastIndex. for example matches(node, 1) will make sure that the node 
     // matches selector 1, and check for an appropriately-related ancestor 
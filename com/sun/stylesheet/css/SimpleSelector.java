@@ -26,6 +26,8 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.sun.stylesheet.Match;
 import com.sun.stylesheet.Selector;
@@ -40,6 +42,34 @@ import com.sun.stylesheet.types.TypeManager;
 public class SimpleSelector implements Selector {
     private static final int MAX_CLASS_DEPTH = 10000;
     
+    /**
+     * Maps each class to the match weights of every name it answers to.  The 
+     * fully-qualified and simple names of the class and all of its 
+     * superclasses are mapped to the weight with which a selector naming them 
+     * matches the class, so that matching is a single lookup with no string 
+     * manipulation.  <code>ClassValue</code> keeps the cache from pinning 
+     * classes which would otherwise be unloaded.
+     */
+    private static final ClassValue<Map<String, Integer>> classWeights = 
+            new ClassValue<Map<String, Integer>>() {
+        protected Map<String, Integer> computeValue(Class type) {
+            Map<String, Integer> result = new HashMap<String, Integer>();
+            int currentWeight = MAX_CLASS_DEPTH;
+            for (Class javaClass = type; javaClass != null; 
+                    javaClass = javaClass.getSuperclass()) {
+                Integer weight = currentWeight--;
+                String name = javaClass.getName();
+                // nearer classes are visited first and have higher weights
+                if (!result.containsKey(name))
+                    result.put(name, weight);
+                String simpleName = name.substring(name.lastIndexOf(".") + 1);
+                if (!result.containsKey(simpleName))
+                    result.put(simpleName, weight);
+            }
+            return result;
+        }
+    };
+    
     private String javaClassName;
     private String styleClass;
     private String[] pseudoclasses;
@@ -68,6 +98,50 @@ public class SimpleSelector implements Selector {
     }
     
     
+    /**
+     * Returns the Java class name this selector matches against, or 
+     * <code>null</code> if it matches any class.
+     *
+     *@return the Java class name
+     */
+    public String getJavaClassName() {
+        return javaClassName;
+    }
+    
+    
+    /**
+     * Returns the style class this selector matches against, or 
+     * <code>null</code> if it matches any style class.
+     *
+     *@return the style class
+     */
+    public String getStyleClass() {
+        return styleClass;
+    }
+    
+    
+    /**
+     * Returns the pseudoclasses this selector requires, or <code>null</code> 
+     * if there are none.
+     *
+     *@return the pseudoclasses
+     */
+    public String[] getPseudoclasses() {
+        return pseudoclasses;
+    }
+    
+    
+    /**
+     * Returns the ID this selector matches against, or <code>null</code> if 
+     * it matches any ID.
+     *
+     *@return the ID
+     */
+    public String getId() {
+        return id;
+    }
+    
+    
     /**
      * Returns a {@link Match} if this selector matches the specified object, or 
      * <code>null</code> otherwise.
@@ -81,20 +155,10 @@ public class SimpleSelector implements Selector {
         if (javaClassName != null) {
             Class[] classes = node.getObjectClasses();
             for (int i = 0; i < classes.length; i++) {
-                Class javaClass = classes[i];
-                int currentWeight = MAX_CLASS_DEPTH;
-                do {
-                    String name = javaClass.getName();
-                    if (name.equals(javaClassName) || 
-                            name.substring(name.lastIndexOf(".") + 
-                            1).equals(javaClassName)) {
-                        classMatch = Math.max(classMatch, currentWeight);
-                        break;
-                    }
-                    javaClass = javaClass.getSuperclass();
-                    currentWeight--;
-                }
-                while (javaClass != null);
+                Integer weight = classWeights.get(classes[i]).get(
+                        javaClassName);
+                if (weight != null)
+                    classMatch = Math.max(classMatch, weight);
             }
         }
         
@@ -26,20 +26,105 @@
 package com.sun.stylesheet.styleable;
 
 import java.beans.PropertyDescriptor;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import com.sun.stylesheet.StylesheetException;
 import com.sun.stylesheet.UnsupportedPropertyException;
 
 /**
- * Provides get/set support for a JavaBeans property.
+ * Provides get/set support for a JavaBeans property.  Values are compared 
+ * using {@link ValueEquality#EQUALS} unless another comparison is specified 
+ * with {@link #setValueEquality}.
+ * <p>
+ * The property's accessor methods are invoked through a {@link Function} and 
+ * a {@link BiConsumer} spun by {@link LambdaMetafactory}, which call the 
+ * accessors directly and so can be inlined like any other call.  They are 
+ * created on first use and kept for the lifetime of the handler (and so of 
+ * its <code>StyleSupport</code>).  Methods which cannot be reached through a 
+ * public lookup, or whose classes are not visible from this class' loader, 
+ * are invoked reflectively instead.  Properties described by a {@link 
+ * GeneratedPropertyDescriptor} with a {@link PropertyAccessor} are accessed 
+ * directly through the accessor.  Any exception thrown by an accessor is 
+ * wrapped in a {@link StylesheetException};  errors are propagated 
+ * unchanged.
  *
  *@author Ethan Nicholas
  */
-public class DefaultPropertyHandler implements PropertyHandler {
+public class DefaultPropertyHandler implements PropertyHandler, ValueEquality {
     protected PropertyDescriptor descriptor;
+    
+    private ValueEquality valueEquality = ValueEquality.EQUALS;
+    
+    // erased signatures of Function.apply and BiConsumer.accept
+    private static final MethodType GETTER_TYPE = 
+            MethodType.methodType(Object.class, Object.class);
+    
+    private static final MethodType SETTER_TYPE = 
+            MethodType.methodType(void.class, Object.class, Object.class);
+    
+    // the accessors and calls to them, or null if not yet resolved or not 
+    // available;  each pair is published by its volatile flag
+    private Method readMethod;
+    private Method writeMethod;
+    private Function<Object, Object> getter;
+    private BiConsumer<Object, Object> setter;
+    private volatile boolean getterResolved;
+    private volatile boolean setterResolved;
+    
+    // direct access for generated descriptors
+    private PropertyAccessor accessor;
+    private int index;
 
     public DefaultPropertyHandler(PropertyDescriptor descriptor) {
         this.descriptor = descriptor;
+        if (descriptor instanceof GeneratedPropertyDescriptor) {
+            GeneratedPropertyDescriptor generated = 
+                    (GeneratedPropertyDescriptor) descriptor;
+            accessor = generated.getAccessor();
+            index = generated.getIndex();
+        }
+    }
+    
+    
+    /** Returns the descriptor of the property this handler supports. */
+    public PropertyDescriptor getPropertyDescriptor() {
+        return descriptor;
+    }
+    
+    
+    /**
+     * Returns the comparison used to decide whether a write to this property 
+     * can be skipped.
+     */
+    public ValueEquality getValueEquality() {
+        return valueEquality;
+    }
+    
+    
+    /**
+     * Sets the comparison used to decide whether a write to this property 
+     * can be skipped, typically one of {@link ValueEquality#IDENTITY}, {@link 
+     * ValueEquality#EQUALS} or {@link ValueEquality#NEVER}.
+     *
+     *@param valueEquality the comparison to use
+     *@throws NullPointerException if valueEquality is null
+     */
+    public void setValueEquality(ValueEquality valueEquality) {
+        if (valueEquality == null)
+            throw new NullPointerException();
+        this.valueEquality = valueEquality;
+    }
+    
+    
+    public boolean isEqual(Object currentValue, Object newValue) {
+        return valueEquality.isEqual(currentValue, newValue);
     }
     
     
@@ -48,10 +133,102 @@ public class DefaultPropertyHandler implements PropertyHandler {
     }
     
     
+    /**
+     * Returns a <code>Function</code> calling the getter, or <code>null</code> 
+     * if it cannot be created.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> createGetter(Method method) {
+        Class<?> type = method.getDeclaringClass();
+        if (!isVisible(type) || !isVisible(method.getReturnType()))
+            return null;
+        return (Function<Object, Object>) metafactory(method, Function.class, 
+                "apply", GETTER_TYPE, MethodType.methodType(Object.class, type));
+    }
+    
+    
+    /**
+     * Returns a <code>BiConsumer</code> calling the setter, or 
+     * <code>null</code> if it cannot be created.
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> createSetter(Method method) {
+        Class<?> type = method.getDeclaringClass();
+        Class<?> valueType = method.getParameterTypes()[0];
+        if (!isVisible(type) || !isVisible(valueType))
+            return null;
+        return (BiConsumer<Object, Object>) metafactory(method, 
+                BiConsumer.class, "accept", SETTER_TYPE, 
+                MethodType.methodType(void.class, type, 
+                        MethodType.methodType(valueType).wrap().returnType()));
+    }
+    
+    
+    /**
+     * Returns an instance of the functional interface which calls the 
+     * method, or <code>null</code> if the method is not publicly accessible.
+     */
+    private static Object metafactory(Method method, Class<?> interfaceType, 
+            String name, MethodType erasedType, MethodType instantiatedType) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+            return LambdaMetafactory.metafactory(MethodHandles.lookup(), name, 
+                    MethodType.methodType(interfaceType), erasedType, handle, 
+                    instantiatedType).getTarget().invoke();
+        }
+        catch (Throwable e) {
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Returns true if the class can be resolved by name from this class' 
+     * loader, as the classes generated by <code>LambdaMetafactory</code> 
+     * must.
+     */
+    private static boolean isVisible(Class<?> type) {
+        if (type.isPrimitive())
+            return true;
+        try {
+            return Class.forName(type.getName(), false, 
+                    DefaultPropertyHandler.class.getClassLoader()) == type;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+    
+    
     public Object getProperty(Object object) throws StylesheetException {
-        if (descriptor.getReadMethod() != null) {
+        if (accessor != null && 
+                ((GeneratedPropertyDescriptor) descriptor).isReadable()) {
+            try {
+                return accessor.readProperty(object, index);
+            }
+            catch (StylesheetException e) {
+                throw e;
+            }
+            catch (RuntimeException e) {
+                throw new StylesheetException(e);
+            }
+        }
+        if (!getterResolved) {
+            readMethod = descriptor.getReadMethod();
+            if (readMethod != null)
+                getter = createGetter(readMethod);
+            getterResolved = true;
+        }
+        if (readMethod != null) {
             try {
-                return descriptor.getReadMethod().invoke(object);
+                if (getter != null)
+                    return getter.apply(object);
+                return readMethod.invoke(object);
+            }
+            catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new StylesheetException(e);
             }
             catch (Exception e) {
                 throw new StylesheetException(e);
@@ -64,9 +241,36 @@ public class DefaultPropertyHandler implements PropertyHandler {
 
 
     public void setProperty(Object object, Object value) throws StylesheetException {
-        if (descriptor.getWriteMethod() != null) {
+        if (accessor != null && 
+                ((GeneratedPropertyDescriptor) descriptor).isWritable()) {
             try {
-                descriptor.getWriteMethod().invoke(object, value);
+                accessor.writeProperty(object, index, value);
+                return;
+            }
+            catch (StylesheetException e) {
+                throw e;
+            }
+            catch (RuntimeException e) {
+                throw new StylesheetException(e);
+            }
+        }
+        if (!setterResolved) {
+            writeMethod = descriptor.getWriteMethod();
+            if (writeMethod != null)
+                setter = createSetter(writeMethod);
+            setterResolved = true;
+        }
+        if (writeMethod != null) {
+            try {
+                if (setter != null)
+                    setter.accept(object, value);
+                else
+                    writeMethod.invoke(object, value);
+            }
+            catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new StylesheetException(e);
             }
             catch (Exception e) {
                 throw new StylesheetException(e);
@@ -25,9 +25,11 @@
 
 package com.sun.stylesheet.styleable;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sun.stylesheet.PropertyManager;
 import com.sun.stylesheet.PseudoclassListener;
@@ -65,16 +67,39 @@ public class DefaultStyleable implements Styleable {
 		}
 	}
 
+	/**
+	 * Identifies a slot in which the holder of the key keeps state of its own
+	 * on every <code>DefaultStyleable</code>. Only code holding the key can
+	 * read or write the slot, so keys should be kept private to their owner.
+	 */
+	public static final class Key<T> {
+		private static final AtomicInteger count = new AtomicInteger();
+
+		private final int index = count.getAndIncrement();
+	}
+
+	private static final Object[] NO_ATTACHMENTS = new Object[0];
+
 	// static Map<Class, StyleSupport> support = new HashMap<Class,
 	// StyleSupport>();
 
 	Object object;
 
+	/** Resolved once, as the object's class never changes. */
+	private final StyleSupport support;
+
 	Set<StylesheetApplication> stylesheets = new HashSet<StylesheetApplication>();
 
+	/** Property values applied to this object, maintained by PropertyManager. */
+	private PropertyManager.PropertyTable propertyTable;
+
+	/** Values of the slots identified by {@link Key}s, indexed by key. */
+	private volatile Object[] attachments = NO_ATTACHMENTS;
+
 	public DefaultStyleable(Object object) {
 		this.object = object;
-		getStyleSupport().addHierarchyListener(this);
+		this.support = TypeManager.getStyleSupport(object);
+		support.addHierarchyListener(this);
 	}
 
 	/**
@@ -125,12 +150,59 @@ public class DefaultStyleable implements Styleable {
 		stylesheets.remove(new StylesheetApplication(s, depth));
 	}
 
-	private synchronized StyleSupport getStyleSupport() {
-		return TypeManager.getStyleSupport(object);
+	/**
+	 * Returns <code>true</code> if the specified stylesheet is currently
+	 * applied to this object at the specified depth.
+	 * 
+	 *@see #addStylesheet
+	 */
+	public boolean isStyledBy(Stylesheet s, int depth) {
+		return stylesheets.contains(new StylesheetApplication(s, depth));
+	}
+
+	/** INTERNAL USE ONLY. */
+	public PropertyManager.PropertyTable getPropertyTable() {
+		return propertyTable;
+	}
+
+	/** INTERNAL USE ONLY. */
+	public void setPropertyTable(PropertyManager.PropertyTable propertyTable) {
+		this.propertyTable = propertyTable;
+	}
+
+	/**
+	 * Returns the value of the slot identified by <code>key</code>, or
+	 * <code>null</code> if it has not been set.
+	 * 
+	 *@see #setAttachment
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getAttachment(Key<T> key) {
+		Object[] attachments = this.attachments;
+		return key.index < attachments.length ? (T) attachments[key.index] : null;
+	}
+
+	/**
+	 * Sets the value of the slot identified by <code>key</code>. Callers
+	 * which read and then write a slot must serialize those calls themselves.
+	 * 
+	 *@see #getAttachment
+	 */
+	public synchronized <T> void setAttachment(Key<T> key, T value) {
+		Object[] attachments = this.attachments;
+		if (key.index >= attachments.length) {
+			if (value == null)
+				return;
+			attachments = Arrays.copyOf(attachments, key.index + 1);
+		}
+		else
+			attachments = attachments.clone();
+		attachments[key.index] = value;
+		this.attachments = attachments;
 	}
 
 	public String getID() {
-		return getStyleSupport().getID(object);
+		return support.getID(object);
 	}
 
 	public Object getBaseObject() {
@@ -138,47 +210,75 @@ public class DefaultStyleable implements Styleable {
 	}
 
 	public Class[] getObjectClasses() {
-		return getStyleSupport().getObjectClasses(object);
+		return support.getObjectClasses(object);
 	}
 
 	public String getStyleClass() {
-		return getStyleSupport().getStyleClass(object);
+		return support.getStyleClass(object);
+	}
+
+	/**
+	 * Returns the type of the specified property. String values are converted
+	 * to this type by {@link #convertPropertyFromString}.
+	 */
+	public Class getPropertyType(String propertyName) throws StylesheetException {
+		return support.getPropertyType(object, propertyName);
 	}
 
 	public Object convertPropertyFromString(String propertyName, String value)
 			throws StylesheetException {
-		Class type = getStyleSupport().getPropertyType(object, propertyName);
-		return TypeManager.convertFromString(value, type);
+		return TypeManager.convertFromString(value, getPropertyType(propertyName));
 	}
 
 	public Object getProperty(String key) throws StylesheetException {
-		return getStyleSupport().getProperty(object, key);
+		return support.getProperty(object, key);
 	}
 
 	public void setProperty(String key, Object value) throws StylesheetException {
-		getStyleSupport().setProperty(object, key, value);
+		support.setProperty(object, key, value);
+	}
+
+	/**
+	 * Returns the handler for the specified property, or <code>null</code> if
+	 * there is none.
+	 */
+	public PropertyHandler getPropertyHandler(String key) {
+		return support.getPropertyHandler(key);
+	}
+
+	/** Returns the <code>StyleSupport</code> this object delegates to. */
+	public StyleSupport getStyleSupport() {
+		return support;
 	}
 
 	public Styleable getStyleableParent() {
-		return getStyleSupport().getStyleableParent(object);
+		return support.getStyleableParent(object);
 	}
 
 	public Styleable[] getStyleableChildren() {
-		return getStyleSupport().getStyleableChildren(object);
+		return support.getStyleableChildren(object);
+	}
+
+	public int getStyleableChildCount() {
+		return support.getStyleableChildCount(object);
+	}
+
+	public Styleable getStyleableChild(int index) {
+		return support.getStyleableChild(object, index);
 	}
 
 	public boolean isPropertyInherited(String propertyName) throws StylesheetException {
-		return getStyleSupport().isPropertyInherited(object, propertyName);
+		return support.isPropertyInherited(object, propertyName);
 	}
 
 	public void addPseudoclassListener(String pseudoclass, PseudoclassListener listener)
 			throws StylesheetException {
-		getStyleSupport().addPseudoclassListener(this, pseudoclass, listener);
+		support.addPseudoclassListener(this, pseudoclass, listener);
 	}
 
 	public void removePseudoclassListener(String pseudoclass, PseudoclassListener listener)
 			throws StylesheetException {
-		getStyleSupport().removePseudoclassListener(this, pseudoclass, listener);
+		support.removePseudoclassListener(this, pseudoclass, listener);
 	}
 
 	public void childAdded(Styleable child) {
@@ -191,6 +291,21 @@ public class DefaultStyleable implements Styleable {
 		}
 	}
 
+	/**
+	 * Styles several children which have been added at once, sharing the
+	 * work of matching between siblings which are styled alike.
+	 */
+	public void childrenAdded(Styleable[] children) {
+		try {
+			for (StylesheetApplication s : stylesheets)
+				s.stylesheet.applyTo(children, s.depth + 1);
+			for (Styleable child : children)
+				PropertyManager.cascadeTo(child, true);
+		} catch (StylesheetException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
 	public void childRemoved(Styleable child) {
 		try {
 			PropertyManager.removeAllStyles(child);
@@ -201,7 +316,7 @@ public class DefaultStyleable implements Styleable {
 
 	public Map<String, Object> splitCompoundProperty(String property, Object value)
 			throws StylesheetException {
-		return getStyleSupport().splitCompoundProperty(object, property, value);
+		return support.splitCompoundProperty(object, property, value);
 	}
 
 	public boolean equals(Object o) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.styleable;
+
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+
+/**
+ * A <code>PropertyDescriptor</code> whose information was computed ahead of 
+ * time, so that it can be created without JavaBeans introspection.  The 
+ * property's type is known up front and its accessor methods are only looked 
+ * up if they are actually requested.  If the descriptor has a {@link 
+ * PropertyAccessor}, {@link DefaultPropertyHandler} uses it to access the 
+ * property directly.
+ */
+public class GeneratedPropertyDescriptor extends PropertyDescriptor {
+    private Class<?> beanClass;
+    private Class<?> type;
+    private String readMethodName;
+    private String writeMethodName;
+    private PropertyAccessor accessor;
+    private int index;
+    private Method readMethod;
+    private Method writeMethod;
+    
+    /**
+     * Creates a new <code>GeneratedPropertyDescriptor</code>.
+     *
+     *@param name the property's name
+     *@param beanClass the class to which the property belongs
+     *@param type the property's type
+     *@param readMethodName the name of the read method, or <code>null</code> 
+     *      if the property cannot be read
+     *@param writeMethodName the name of the write method, or 
+     *      <code>null</code> if the property cannot be written
+     *@param accessor the accessor providing direct access to the property, or 
+     *      <code>null</code> to access it through reflection
+     *@param index the property's index within the accessor
+     *@throws IntrospectionException if the name is invalid
+     */
+    public GeneratedPropertyDescriptor(String name, Class beanClass, 
+            Class type, String readMethodName, String writeMethodName, 
+            PropertyAccessor accessor, int index) 
+            throws IntrospectionException {
+        super(name, null, null);
+        this.beanClass = beanClass;
+        this.type = type;
+        this.readMethodName = readMethodName;
+        this.writeMethodName = writeMethodName;
+        this.accessor = accessor;
+        this.index = index;
+    }
+    
+    
+    public Class<?> getPropertyType() {
+        return type;
+    }
+    
+    
+    /** Returns <code>true</code> if the property has a read method. */
+    public boolean isReadable() {
+        return readMethodName != null;
+    }
+    
+    
+    /** Returns <code>true</code> if the property has a write method. */
+    public boolean isWritable() {
+        return writeMethodName != null;
+    }
+    
+    
+    /** 
+     * Returns the accessor for this property, or <code>null</code> if it 
+     * must be accessed through reflection.
+     */
+    public PropertyAccessor getAccessor() {
+        return accessor;
+    }
+    
+    
+    /** Returns the index of this property within its accessor. */
+    public int getIndex() {
+        return index;
+    }
+    
+    
+    public synchronized Method getReadMethod() {
+        if (readMethod == null && readMethodName != null) {
+            try {
+                readMethod = beanClass.getMethod(readMethodName);
+            }
+            catch (NoSuchMethodException e) {
+                readMethodName = null; // class has changed since generation
+            }
+        }
+        return readMethod;
+    }
+    
+    
+    public synchronized Method getWriteMethod() {
+        if (writeMethod == null && writeMethodName != null) {
+            try {
+                writeMethod = beanClass.getMethod(writeMethodName, type);
+            }
+            catch (NoSuchMethodException e) {
+                writeMethodName = null;
+            }
+        }
+        return writeMethod;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.styleable;
+
+/**
+ * Reads and writes properties of objects by index, calling their accessor 
+ * methods directly rather than through reflection.  Implementations are 
+ * normally generated ahead of time for a specific class by 
+ * {@link com.sun.stylesheet.swing.StyleSupportGenerator}, and the indices 
+ * correspond to the {@link GeneratedPropertyDescriptor GeneratedPropertyDescriptors} 
+ * which refer to the accessor.
+ */
+public interface PropertyAccessor {
+    /**
+     * Returns the value of a property.
+     *
+     *@param object the object being queried
+     *@param index the index of the property
+     *@return the property's value
+     *@throws StylesheetException if the property could not be read
+     */
+    Object readProperty(Object object, int index);
+    
+    /**
+     * Sets the value of a property.
+     *
+     *@param object the object being modified
+     *@param index the index of the property
+     *@param value the property's new value
+     *@throws StylesheetException if the property could not be written
+     */
+    void writeProperty(Object object, int index, Object value);
+}
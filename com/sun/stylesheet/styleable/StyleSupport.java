@@ -48,6 +48,28 @@ public interface StyleSupport {
     
     Styleable[] getStyleableChildren(Object object);
     
+    /** 
+     * Counts the array returned by {@link #getStyleableChildren}, unless 
+     * overridden by an implementation which can do better.  Traversals 
+     * fetch the array once per node for supports which override neither 
+     * indexed method.
+     */
+    default int getStyleableChildCount(Object object) {
+        Styleable[] children = getStyleableChildren(object);
+        return children != null ? children.length : 0;
+    }
+    
+    /** 
+     * Indexes the array returned by {@link #getStyleableChildren}, unless 
+     * overridden by an implementation which can do better.
+     */
+    default Styleable getStyleableChild(Object object, int index) {
+        Styleable[] children = getStyleableChildren(object);
+        if (children == null)
+            throw new IndexOutOfBoundsException("index: " + index);
+        return children[index];
+    }
+    
     Class getPropertyType(Object object, String propertyName);
     
     Object getProperty(Object object, String propertyName);
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.styleable;
+
+/**
+ * Decides whether a property already holds a value, so that redundant 
+ * writes can be skipped.  Rewriting a property with an equal value is not 
+ * always free -- Swing setters typically fire property changes and 
+ * invalidate the component's layout even when nothing has changed.
+ * <p>
+ * A {@link PropertyHandler} which also implements <code>ValueEquality</code> 
+ * controls how its property is compared;  all other properties are compared 
+ * using {@link #EQUALS}.
+ *
+ *@see DefaultPropertyHandler#setValueEquality
+ */
+public interface ValueEquality {
+    /** Values are only equal if they are the same object. */
+    public static final ValueEquality IDENTITY = new ValueEquality() {
+        public boolean isEqual(Object currentValue, Object newValue) {
+            return currentValue == newValue;
+        }
+    };
+    
+    
+    /** 
+     * Values are equal if they are of the same class and {@link 
+     * Object#equals equal}.  The class check keeps styled values from being 
+     * mistaken for equal look and feel defaults, such as a 
+     * <code>ColorUIResource</code>, which would later be replaced.
+     */
+    public static final ValueEquality EQUALS = new ValueEquality() {
+        public boolean isEqual(Object currentValue, Object newValue) {
+            if (currentValue == newValue)
+                return true;
+            if (currentValue == null || newValue == null)
+                return false;
+            return currentValue.getClass() == newValue.getClass() && 
+                    currentValue.equals(newValue);
+        }
+    };
+    
+    
+    /** 
+     * Values are never equal, so the property is always written.  Suitable 
+     * for properties whose setters have side effects that must be preserved.
+     */
+    public static final ValueEquality NEVER = new ValueEquality() {
+        public boolean isEqual(Object currentValue, Object newValue) {
+            return false;
+        }
+    };
+    
+    
+    /**
+     * Returns <code>true</code> if writing <code>newValue</code> to a 
+     * property currently holding <code>currentValue</code> would have no 
+     * effect.
+     *
+     *@param currentValue the property's current value
+     *@param newValue the value about to be written
+     *@return true if the write can be skipped
+     */
+    boolean isEqual(Object currentValue, Object newValue);
+}
@@ -25,17 +25,8 @@
 
 import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.swing.AbstractButton;
-import javax.swing.event.ChangeEvent;
-import javax.swing.event.ChangeListener;
-
-import com.sun.stylesheet.PseudoclassEvent;
-import com.sun.stylesheet.PseudoclassListener;
-import com.sun.stylesheet.StylesheetException;
-import com.sun.stylesheet.styleable.DefaultStyleable;
 
 /**
  * Implements <code>Styleable</code> support for {@link AbstractButton 
@@ -46,9 +37,6 @@ import com.sun.stylesheet.styleable.DefaultStyleable;
  *@author Ethan Nicholas
  */
 public class AbstractButtonStyleSupport extends ComponentStyleSupport {
-    private Map<PseudoclassListener, ChangeListener> armedListeners;
-   
-   
     /**
      * Creates a new <code>AbstractButtonStyleSupport</code> for the specified 
      * class.
@@ -73,59 +61,4 @@ public class AbstractButtonStyleSupport extends ComponentStyleSupport {
         else
             super.createPropertyHandler(descriptor);
     }
-    
-    
-    private synchronized ChangeListener getArmedListener(
-            final PseudoclassListener listener, 
-            final PseudoclassEvent event, 
-            final boolean inverse) {
-        if (armedListeners == null)
-            armedListeners = new HashMap<PseudoclassListener, ChangeListener>();
-        ChangeListener result = armedListeners.get(listener);
-        if (result == null) {
-            result = new ChangeListener() {
-                public void stateChanged(ChangeEvent e) {
-                    AbstractButton button = (AbstractButton) e.getSource();
-                    if (inverse != button.getModel().isArmed())
-                        listener.pseudoclassAdded(event);
-                    else
-                        listener.pseudoclassRemoved(event);
-                }
-            };
-            armedListeners.put(listener, result);
-        }
-        return result;
-    }
-
-
-    public void addPseudoclassListener(DefaultStyleable styleable, 
-            String pseudoclass, final PseudoclassListener listener) 
-            throws StylesheetException {
-        final PseudoclassEvent event = new PseudoclassEvent(styleable, 
-                pseudoclass);
-        if (pseudoclass.equals("armed") || pseudoclass.equals("unarmed")) {
-            boolean inverse = pseudoclass.equals("unarmed");
-            AbstractButton button = (AbstractButton) styleable.getBaseObject();
-            if (button.getModel().isArmed() != inverse)
-                listener.pseudoclassAdded(event);
-            button.addChangeListener(getArmedListener(listener, event, 
-                    inverse));
-        }
-        else
-            super.addPseudoclassListener(styleable, pseudoclass, listener);
-    }
-    
-    
-    public void removePseudoclassListener(DefaultStyleable styleable, 
-            String pseudoclass, final PseudoclassListener listener) 
-            throws StylesheetException {
-        if (pseudoclass.equals("armed") || pseudoclass.equals("unarmed")) {
-            boolean inverse = pseudoclass.equals("unarmed");
-            AbstractButton button = (AbstractButton) styleable.getBaseObject();
-            button.removeChangeListener(getArmedListener(listener, null, 
-                    inverse));
-        }
-        else
-            super.removePseudoclassListener(styleable, pseudoclass, listener);
-    }
 }
\ No newline at end of file
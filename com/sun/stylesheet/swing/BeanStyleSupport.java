@@ -65,12 +65,24 @@ public class BeanStyleSupport implements StyleSupport {
 	/** The BeanInfo for the beanClass. */
 	protected BeanInfo beanInfo;
 
+	/** The beanClass' property descriptors. */
+	private PropertyDescriptor[] propertyDescriptors;
+
+	/** True once init() has completed. */
+	private volatile boolean initialized;
+
 	/** All matching Java classes. */
 	private Class[] classes;
 
 	/** Maps property names to their respective PropertyHandlers. */
 	protected Map<String, PropertyHandler> properties;
 
+	/**
+	 * Maps expressions to their compiled predicates, or to <code>null</code>
+	 * if they must be left to Beans Binding.
+	 */
+	private Map<String, PropertyPredicate> predicates;
+
 	/** Maps EL expressions to ELProperties. */
 	private Map<String, ELProperty> elProperties;
 
@@ -88,13 +100,10 @@ public class BeanStyleSupport implements StyleSupport {
 		this.beanClass = beanClass;
 	}
 
-	/** Performs introspection on the beanClass and stores the results. */
+	/** Creates the property handlers for the beanClass. */
 	protected void init() throws IntrospectionException {
-		if (beanInfo == null) {
-			// perform introspection & cache the results
-			beanInfo = getBeanInfo(beanClass);
-
-			PropertyDescriptor[] propertiesArray = beanInfo.getPropertyDescriptors();
+		if (properties == null) {
+			PropertyDescriptor[] propertiesArray = getPropertyDescriptors();
 			properties = new HashMap<String, PropertyHandler>();
 			for (int i = propertiesArray.length - 1; i >= 0; i--)
 				createPropertyHandler(propertiesArray[i]);
@@ -106,6 +115,48 @@ public class BeanStyleSupport implements StyleSupport {
 		}
 	}
 
+	/**
+	 * Calls {@link #init} if it has not yet completed. Initialization happens
+	 * exactly once, even if several threads use this object at the same time.
+	 */
+	private void ensureInitialized() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					try {
+						init();
+					} catch (IntrospectionException e) {
+						throw new RuntimeException(e);
+					}
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Performs all lazy initialization ahead of time: the class is
+	 * introspected and the converters and interpolators for its property
+	 * types are resolved. May be called from any thread.
+	 * 
+	 *@see TypeManager#prewarm
+	 */
+	public void prewarm() {
+		ensureInitialized();
+		for (PropertyHandler handler : properties.values()) {
+			Class type;
+			try {
+				type = handler.getPropertyType(null);
+			} catch (RuntimeException e) {
+				continue; // type depends on the object
+			}
+			if (type != null) {
+				TypeManager.getTypeConverter(type);
+				TypeManager.getInterpolator(type);
+			}
+		}
+	}
+
 	protected void createPropertyHandler(PropertyDescriptor descriptor) {
 		String name = descriptor.getName();
 		properties.put(name, new DefaultPropertyHandler(descriptor));
@@ -125,15 +176,41 @@ public class BeanStyleSupport implements StyleSupport {
 		return beanClass;
 	}
 
+	/**
+	 * Returns the descriptors of the properties of the class which this
+	 * <code>BeanStyleSupport</code> supports. The default implementation
+	 * performs JavaBeans introspection, whose results are kept in an on-disk
+	 * cache so that later runs can skip it as long as the class does not
+	 * change; classes generated by {@link StyleSupportGenerator} return
+	 * precomputed descriptors instead.
+	 * 
+	 *@return the class' property descriptors
+	 *@throws IntrospectionException
+	 *             if an error occurs during introspection
+	 */
+	protected synchronized PropertyDescriptor[] getPropertyDescriptors()
+			throws IntrospectionException {
+		if (propertyDescriptors == null) {
+			propertyDescriptors = IntrospectionCache.load(beanClass);
+			if (propertyDescriptors == null) {
+				propertyDescriptors = getBeanInfo().getPropertyDescriptors();
+				IntrospectionCache.store(beanClass, propertyDescriptors);
+			}
+		}
+		return propertyDescriptors;
+	}
+
 	/**
 	 * Returns the <code>BeanInfo</code> for the class which this
 	 * <code>BeanStyleSupport</code> supports.
 	 */
 	public BeanInfo getBeanInfo() {
-		try {
-			init();
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
+		if (beanInfo == null) {
+			try {
+				beanInfo = getBeanInfo(beanClass);
+			} catch (IntrospectionException e) {
+				throw new RuntimeException(e);
+			}
 		}
 		return beanInfo;
 	}
@@ -163,11 +240,7 @@ public class BeanStyleSupport implements StyleSupport {
 	 *             if the type cannot be determined
 	 */
 	public Class getPropertyType(Object object, String propertyName) throws StylesheetException {
-		try {
-			init();
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
-		}
+		ensureInitialized();
 
 		PropertyHandler property = properties.get(propertyName);
 		if (property != null)
@@ -190,11 +263,7 @@ public class BeanStyleSupport implements StyleSupport {
 	 *@see #setProperty
 	 */
 	public Object getProperty(Object object, String propertyName) throws StylesheetException {
-		try {
-			init();
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
-		}
+		ensureInitialized();
 
 		PropertyHandler property = properties.get(propertyName);
 		if (property != null)
@@ -219,11 +288,7 @@ public class BeanStyleSupport implements StyleSupport {
 	 */
 	public void setProperty(Object object, String propertyName, Object value)
 			throws StylesheetException {
-		try {
-			init();
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
-		}
+		ensureInitialized();
 
 		PropertyHandler property = properties.get(propertyName);
 		if (property != null)
@@ -234,6 +299,8 @@ public class BeanStyleSupport implements StyleSupport {
 	}
 
 	public PropertyHandler getPropertyHandler(String name) {
+		ensureInitialized();
+
 		return properties.get(name);
 	}
 
@@ -263,6 +330,17 @@ public class BeanStyleSupport implements StyleSupport {
 		return result;
 	}
 
+	private synchronized PropertyPredicate getPredicate(String pseudoclass) {
+		if (predicates == null)
+			predicates = new HashMap<String, PropertyPredicate>();
+		if (predicates.containsKey(pseudoclass))
+			return predicates.get(pseudoclass);
+		PropertyPredicate result = PropertyPredicate.compile(
+			pseudoclass.substring(1, pseudoclass.length() - 1), this);
+		predicates.put(pseudoclass, result);
+		return result;
+	}
+
 	private synchronized ELProperty getELProperty(String expression) {
 		if (elProperties == null)
 			elProperties = new HashMap<String, ELProperty>();
@@ -313,6 +391,12 @@ public class BeanStyleSupport implements StyleSupport {
 
 		// add listeners
 		if (pseudoclass.startsWith("{")) {
+			PropertyPredicate predicate = getPredicate(pseudoclass);
+			if (predicate != null) {
+				PropertyPredicate.addPseudoclassListener(predicate, styleable,
+					listener, event);
+				return;
+			}
 			ELProperty property = getELProperty("$" + pseudoclass);
 			if (Boolean.TRUE.equals(property.getValue(object)))
 				listener.pseudoclassAdded(event);
@@ -344,6 +428,12 @@ public class BeanStyleSupport implements StyleSupport {
 
 		// remove listeners
 		if (pseudoclass.startsWith("{")) {
+			PropertyPredicate predicate = getPredicate(pseudoclass);
+			if (predicate != null) {
+				PropertyPredicate.removePseudoclassListener(predicate, styleable,
+					listener);
+				return;
+			}
 			ELProperty property = getELProperty("$" + pseudoclass);
 			property.removePropertyStateListener(object,
 				(PropertyStateListener) getPropertyStateListener(listener, null));
@@ -375,8 +465,12 @@ public class BeanStyleSupport implements StyleSupport {
 	 *             if the property is not an enumeration
 	 */
 	protected int constantValue(String key, String value) {
-		BeanInfo beanInfo = getBeanInfo();
-		PropertyDescriptor[] properties = beanInfo.getPropertyDescriptors();
+		PropertyDescriptor[] properties;
+		try {
+			properties = getPropertyDescriptors();
+		} catch (IntrospectionException e) {
+			throw new RuntimeException(e);
+		}
 		String lowercaseValue = value.toLowerCase();
 		for (int i = 0; i < properties.length; i++) {
 			if (properties[i].getName().equals(key)) {
@@ -456,11 +550,7 @@ public class BeanStyleSupport implements StyleSupport {
 	 * plus all implemented interfaces.
 	 */
 	public Class[] getObjectClasses(Object object) {
-		try {
-			init();
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
-		}
+		ensureInitialized();
 
 		return classes;
 	}
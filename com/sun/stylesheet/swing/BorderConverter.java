@@ -62,6 +62,10 @@ import com.sun.stylesheet.types.TypeManager;
  * BorderFactory.createEtchedBorder(javax.swing.border.EtchedBorder.LOWERED)<br>
  * compoundBorder(lineBorder(blue, 4), lineBorder(red, 4))<br>
  * BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(), "Title")
+ * <p>
+ * This is not a {@link com.sun.stylesheet.types.ContextFreeConverter}:  
+ * <code>TitledBorders</code> are mutable, so each object receives a border of 
+ * its own.
  *
  *@author Ethan Nicholas
  */
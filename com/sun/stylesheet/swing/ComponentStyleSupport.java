@@ -23,22 +23,16 @@
 
 /* Modified by Volker Härtel, 8 Dec 2011 */ package com.sun.stylesheet.swing;
 
+import java.awt.AWTPermission;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.event.ContainerEvent;
 import java.awt.event.ContainerListener;
-import java.awt.event.FocusEvent;
-import java.awt.event.FocusListener;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
+import java.io.Closeable;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.swing.JComponent;
 
-import com.sun.stylesheet.PseudoclassEvent;
 import com.sun.stylesheet.PseudoclassListener;
 import com.sun.stylesheet.Styleable;
 import com.sun.stylesheet.Stylesheet;
@@ -82,17 +76,6 @@ public class ComponentStyleSupport extends BeanStyleSupport {
     }
     
     
-    /** Maps PseudoclassListeners to their mouse over adapters. */
-    private Map<PseudoclassListener, MouseListener> mouseOverListeners;
-
-    /** Maps PseudoclassListeners to their mouse down adapters. */
-    private Map<PseudoclassListener, MouseListener> mouseDownListeners;
-
-
-    /** Maps PseudoclassListeners to their FocusListener adapters. */
-    private Map<PseudoclassListener, FocusListener> focusListeners;
-   
-   
     /**
      * Creates a new <code>ComponentStyleSupport</code> for the specified class.
      *
@@ -199,10 +182,139 @@ public class ComponentStyleSupport extends BeanStyleSupport {
             return new Styleable[0];
     }
 
+
+    /**
+     * Returns the number of children the component has.
+     *
+     *@param object the object whose children are being counted
+     *@return the number of children
+     */
+    public int getStyleableChildCount(Object object) {
+        if (jsgPanel != null && jsgPanel.isInstance(object))
+            return 1;
+        else if (object instanceof Container)
+            return ((Container) object).getComponentCount();
+        else
+            return 0;
+    }
+
+
+    /**
+     * Returns one of the component's children wrapped in a 
+     * <code>Styleable</code>.
+     *
+     *@param object the object whose child is being determined
+     *@param index the index of the child
+     *@return the child at the specified index
+     */
+    public Styleable getStyleableChild(Object object, int index) {
+        if (jsgPanel != null && jsgPanel.isInstance(object)) {
+            if (index != 0)
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            try {
+                return TypeManager.getStyleable(getScene.invoke(object));
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        else if (object instanceof Container)
+            return TypeManager.getStyleable(
+                    ((Container) object).getComponent(index));
+        else
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+
+    /**
+     * A suspension of automatic styling, returned by {@link #deferStyling}.
+     * Closing the deferral is equivalent to resuming it, so that it may be 
+     * used in a try-with-resources statement.
+     */
+    public static final class Deferral implements Closeable {
+        private final Container container;
+        
+        private boolean resumed;
+        
+        private Deferral(Container container) {
+            this.container = container;
+        }
+        
+        
+        /**
+         * Ends the deferral and styles the components which were added while 
+         * it was in effect.  Calling this method more than once has no 
+         * further effect.
+         */
+        public void resume() {
+            if (!resumed) {
+                resumed = true;
+                ContainerEventDispatcher.resume(container);
+            }
+        }
+        
+        
+        /** Equivalent to {@link #resume}. */
+        public void close() {
+            resume();
+        }
+    }
+    
+    
+    /**
+     * Suspends automatic styling of components added anywhere within a 
+     * container, until the returned handle is resumed.  The components added 
+     * in the meantime are then styled in a single pass, which is considerably 
+     * cheaper than styling them one at a time when a large number of them, 
+     * such as the rows of a form, are added at once:
+     * <pre>
+     * ComponentStyleSupport.Deferral deferral = 
+     *         ComponentStyleSupport.deferStyling(panel);
+     * try {
+     *     for (Row row : rows)
+     *         panel.add(createRowComponent(row));
+     * }
+     * finally {
+     *     deferral.resume();
+     * }
+     * </pre>
+     * Deferrals may be nested, in which case styling happens once the 
+     * outermost deferral affecting the container is resumed.  Deferral has no 
+     * effect when the "listenToAllAWTEvents" {@link AWTPermission} is not 
+     * available.
+     *
+     *@param container the container whose new descendents should not be 
+     *      styled yet
+     *@return a handle which must be resumed to style the added components
+     */
+    public static Deferral deferStyling(Container container) {
+        ContainerEventDispatcher.defer(container);
+        return new Deferral(container);
+    }
+
+
+    /**
+     * Immediately styles components which were added to styled containers 
+     * during the current event, rather than once the event has been 
+     * processed.  Call this on the event dispatch thread before computing 
+     * sizes which depend on the styles of newly added components:
+     * <pre>
+     * panel.add(new JLabel("Name:"));
+     * ComponentStyleSupport.flushPendingStyling();
+     * frame.pack();
+     * </pre>
+     * Has no effect when the "listenToAllAWTEvents" {@link AWTPermission} is 
+     * not available, as components are then styled as soon as they are added.
+     */
+    public static void flushPendingStyling() {
+        ContainerEventDispatcher.flush();
+    }
+
+
     @Override
     public void addHierarchyListener(final DefaultStyleable stylable) {
         Object o = stylable.getBaseObject();
-        if (o instanceof Container) {
+        if (o instanceof Container && !ContainerEventDispatcher.install()) {
+            // no permission to listen to all containers at once
             ((Container) o).addContainerListener(new ContainerListener() {
                 public void componentAdded(ContainerEvent e) {
                     Styleable object = TypeManager.getStyleable(e.getChild());
@@ -217,131 +329,13 @@ public class ComponentStyleSupport extends BeanStyleSupport {
         }
     }
 
-    private synchronized FocusListener getFocusListener(
-            final PseudoclassListener listener, 
-            final PseudoclassEvent event, 
-            final boolean inverse) {
-        if (focusListeners == null)
-            focusListeners = new HashMap<PseudoclassListener, FocusListener>();
-        FocusListener result = focusListeners.get(listener);
-        if (result == null) {
-            result = new FocusListener() {
-                public void focusGained(FocusEvent e) {
-                    if (inverse)
-                        listener.pseudoclassRemoved(event);
-                    else
-                        listener.pseudoclassAdded(event);
-                }
-    
-    
-                public void focusLost(FocusEvent e) {
-                    if (inverse)
-                        listener.pseudoclassAdded(event);
-                    else
-                        listener.pseudoclassRemoved(event);
-                }
-            };
-            focusListeners.put(listener, result);
-        }
-        return result;
-    }
-
-
-    private synchronized MouseListener getMouseOverListener(
-            final PseudoclassListener listener, 
-            final PseudoclassEvent event, 
-            final boolean inverse) {
-        if (mouseOverListeners == null)
-            mouseOverListeners = 
-                    new HashMap<PseudoclassListener, MouseListener>();
-        MouseListener result = mouseOverListeners.get(listener);
-        if (result == null) {
-            result = new MouseAdapter() {
-                @Override
-                public void mouseEntered(MouseEvent e) {
-                    if (inverse)
-                        listener.pseudoclassRemoved(event);
-                    else
-                        listener.pseudoclassAdded(event);
-                }
-    
-    
-                @Override
-                public void mouseExited(MouseEvent e) {
-                    if (inverse)
-                        listener.pseudoclassAdded(event);
-                    else
-                        listener.pseudoclassRemoved(event);
-                }
-            };
-            mouseOverListeners.put(listener, result);
-        }
-        return result;
-    }
-    
-    
-    private synchronized MouseListener getMouseDownListener(
-            final PseudoclassListener listener, 
-            final PseudoclassEvent event, 
-            final boolean inverse) {
-        if (mouseDownListeners == null)
-            mouseDownListeners = 
-                    new HashMap<PseudoclassListener, MouseListener>();
-        MouseListener result = mouseDownListeners.get(listener);
-        if (result == null) {
-            result = new MouseAdapter() {
-                @Override
-                public void mousePressed(MouseEvent e) {
-                    if (inverse)
-                        listener.pseudoclassRemoved(event);
-                    else
-                        listener.pseudoclassAdded(event);
-                }
-    
-    
-                @Override
-                public void mouseReleased(MouseEvent e) {
-                    if (inverse)
-                        listener.pseudoclassAdded(event);
-                    else
-                        listener.pseudoclassRemoved(event);
-                }
-            };
-            mouseDownListeners.put(listener, result);
-        }
-        return result;
-    }
-    
-    
     public void addPseudoclassListener(DefaultStyleable styleable, 
             String pseudoclass, final PseudoclassListener listener) 
             throws StylesheetException {
-        final PseudoclassEvent event = new PseudoclassEvent(styleable, 
-                pseudoclass);
-        Component component = (Component) styleable.getBaseObject();
-        if (pseudoclass.equals("focused") || pseudoclass.equals("unfocused")) {
-            boolean inverse = pseudoclass.equals("unfocused");
-            if (component.hasFocus() != inverse)
-                listener.pseudoclassAdded(event);
-            component.addFocusListener(getFocusListener(listener, event, 
-                    inverse));
-        }
-        else if (pseudoclass.equals("mouseover") || 
-                pseudoclass.equals("mouseout")) {
-            boolean inverse = pseudoclass.equals("mouseout");
-            if (inverse)
-                listener.pseudoclassAdded(event);
-            component.addMouseListener(getMouseOverListener(listener, event, 
-                    inverse));
-        }
-        else if (pseudoclass.equals("mousedown") || 
-                pseudoclass.equals("mouseup")) {
-            boolean inverse = pseudoclass.equals("mouseup");
-            if (inverse)
-                listener.pseudoclassAdded(event);
-            component.addMouseListener(getMouseDownListener(listener, event, 
-                    inverse));
-        }
+        if (PseudoclassDispatcher.getFlag(pseudoclass, 
+                styleable.getBaseObject()) != 0)
+            PseudoclassDispatcher.addPseudoclassListener(styleable, 
+                    pseudoclass, listener);
         else
             super.addPseudoclassListener(styleable, pseudoclass, listener);
     }
@@ -350,24 +344,10 @@ public class ComponentStyleSupport extends BeanStyleSupport {
     public void removePseudoclassListener(DefaultStyleable styleable, 
             String pseudoclass, final PseudoclassListener listener) 
             throws StylesheetException {
-        Component component = (Component) styleable.getBaseObject();
-        if (pseudoclass.equals("focused") || pseudoclass.equals("unfocused")) {
-            boolean inverse = pseudoclass.equals("unfocused");
-            component.removeFocusListener(getFocusListener(listener, null, 
-                    inverse));
-        }
-        else if (pseudoclass.equals("mouseover") || 
-                pseudoclass.equals("mouseout")) {
-            boolean inverse = pseudoclass.equals("mouseout");
-            component.removeMouseListener(getMouseOverListener(listener, null, 
-                    inverse));
-        }
-        else if (pseudoclass.equals("mousedown") || 
-                pseudoclass.equals("mouseup")) {
-            boolean inverse = pseudoclass.equals("mouseup");
-            component.removeMouseListener(getMouseDownListener(listener, null, 
-                    inverse));
-        }
+        if (PseudoclassDispatcher.getFlag(pseudoclass, 
+                styleable.getBaseObject()) != 0)
+            PseudoclassDispatcher.removePseudoclassListener(styleable, 
+                    pseudoclass, listener);
         else
             super.removePseudoclassListener(styleable, pseudoclass, listener);
     }
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.ContainerEvent;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.stylesheet.PropertyManager;
+import com.sun.stylesheet.Styleable;
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Forwards container events for all styled containers from a single 
+ * <code>AWTEventListener</code>, rather than adding a 
+ * <code>ContainerListener</code> to every container which is wrapped.
+ * Only containers which already have a <code>Styleable</code> wrapper are 
+ * affected;  events for other containers are ignored without creating one.
+ * <p>
+ * Children added on the event dispatch thread are not styled immediately.  
+ * They are collected until the current event has been processed and then 
+ * styled together, so that building a panel one component at a time 
+ * restyles each component once.  Children added from other threads (for 
+ * instance while a user interface is being built before it is shown) are 
+ * styled immediately.  {@link #flush} styles the collected children at once, 
+ * for code which needs their styled sizes within the same event.
+ * <p>
+ * Styling of a subtree can also be deferred explicitly with {@link #defer}, 
+ * in which case children added anywhere within it are held back, on any 
+ * thread, until the matching {@link #resume}.  Siblings styled together in 
+ * this way share matching work.
+ */
+class ContainerEventDispatcher implements AWTEventListener, Runnable {
+    private static ContainerEventDispatcher instance;
+    private static boolean unavailable;
+    
+    /** Children awaiting styling at the end of the current event. */
+    private final List<Component> pending = new ArrayList<Component>();
+    
+    /** Subtrees whose styling has been deferred, with their nesting counts. */
+    private final Map<Container, Deferral> deferred = 
+            new IdentityHashMap<Container, Deferral>();
+    
+    /** Every child awaiting styling, mapped to the list which holds it. */
+    private final Map<Component, List<Component>> queued = 
+            new IdentityHashMap<Component, List<Component>>();
+    
+    
+    private static class Deferral {
+        int count;
+        final List<Component> children = new ArrayList<Component>();
+    }
+    
+    
+    private ContainerEventDispatcher() {
+    }
+    
+    
+    /**
+     * Installs the global listener if that has not already been done.
+     *
+     *@return <code>false</code> if the listener could not be installed, in 
+     *      which case the caller must listen to its container itself
+     */
+    static synchronized boolean install() {
+        if (instance == null && !unavailable) {
+            try {
+                ContainerEventDispatcher dispatcher = 
+                        new ContainerEventDispatcher();
+                Toolkit.getDefaultToolkit().addAWTEventListener(dispatcher, 
+                        AWTEvent.CONTAINER_EVENT_MASK);
+                instance = dispatcher;
+            }
+            catch (SecurityException e) {
+                // requires the listenToAllAWTEvents permission
+                unavailable = true;
+            }
+        }
+        return instance != null;
+    }
+    
+    
+    /**
+     * Holds back styling of children added within the specified container 
+     * until {@link #resume} is called for it.  Calls may be nested.  Has no 
+     * effect if the global listener is unavailable.
+     */
+    static void defer(Container container) {
+        if (install())
+            instance.deferImpl(container);
+    }
+    
+    
+    /**
+     * Ends a {@link #defer} and, once every deferral of the container has 
+     * ended, styles the children which were added in the meantime.
+     */
+    static void resume(Container container) {
+        if (install())
+            instance.resumeImpl(container);
+    }
+    
+    
+    /**
+     * Styles the children which were added during the current event right 
+     * away, instead of once the event has been processed.  Has no effect if 
+     * the global listener is not installed.
+     */
+    static void flush() {
+        ContainerEventDispatcher dispatcher;
+        synchronized (ContainerEventDispatcher.class) {
+            dispatcher = instance;
+        }
+        if (dispatcher != null)
+            dispatcher.run();
+    }
+    
+    
+    private synchronized void deferImpl(Container container) {
+        Deferral d = deferred.get(container);
+        if (d == null) {
+            d = new Deferral();
+            deferred.put(container, d);
+        }
+        d.count++;
+    }
+    
+    
+    private void resumeImpl(Container container) {
+        Component[] children;
+        synchronized (this) {
+            Deferral d = deferred.get(container);
+            if (d == null)
+                throw new IllegalStateException("styling of " + container + 
+                        " is not deferred");
+            if (--d.count > 0)
+                return;
+            deferred.remove(container);
+            children = take(d.children);
+        }
+        style(children);
+    }
+    
+    
+    public void eventDispatched(AWTEvent event) {
+        ContainerEvent e = (ContainerEvent) event;
+        Styleable container = TypeManager.getExistingStyleable(
+                e.getContainer());
+        if (!(container instanceof DefaultStyleable))
+            return;
+        Component child = e.getChild();
+        switch (e.getID()) {
+            case ContainerEvent.COMPONENT_ADDED:
+                if (!enqueue(e.getContainer(), child))
+                    ((DefaultStyleable) container).childAdded(
+                            TypeManager.getStyleable(child));
+                break;
+            case ContainerEvent.COMPONENT_REMOVED:
+                if (!dequeue(child)) {
+                    ((DefaultStyleable) container).childRemoved(
+                            TypeManager.getStyleable(child));
+                }
+                break;
+        }
+    }
+    
+    
+    /** 
+     * Queues an added child if its styling should be delayed, returning 
+     * <code>false</code> if it should be styled immediately.
+     */
+    private synchronized boolean enqueue(Container parent, Component child) {
+        if (queued.containsKey(child))
+            return true;
+        List<Component> list = null;
+        // the outermost deferral wins, so that resuming a nested one does 
+        // not style part of a tree which is still being built
+        for (Container c = parent; c != null; c = c.getParent()) {
+            Deferral d = deferred.get(c);
+            if (d != null)
+                list = d.children;
+        }
+        if (list == null) {
+            if (!EventQueue.isDispatchThread())
+                return false;
+            if (pending.isEmpty())
+                EventQueue.invokeLater(this);
+            list = pending;
+        }
+        list.add(child);
+        queued.put(child, list);
+        return true;
+    }
+    
+    
+    /** Forgets a removed child, returning true if it was never styled. */
+    private synchronized boolean dequeue(Component child) {
+        List<Component> list = queued.remove(child);
+        if (list == null)
+            return false;
+        list.remove(child);
+        return true;
+    }
+    
+    
+    /** Styles the children collected during the previous event. */
+    public void run() {
+        Component[] children;
+        synchronized (this) {
+            children = take(pending);
+        }
+        style(children);
+    }
+    
+    
+    /** 
+     * Empties a queue, returning the children which need to be styled 
+     * themselves, i.e. those which are still attached and are not inside 
+     * another queued child.
+     */
+    private Component[] take(List<Component> list) {
+        List<Component> result = new ArrayList<Component>(list.size());
+        for (Component child : list) {
+            Container parent = child.getParent();
+            if (parent != null && !hasQueuedAncestor(parent))
+                result.add(child);
+        }
+        for (Component child : list)
+            queued.remove(child);
+        list.clear();
+        return result.toArray(new Component[result.size()]);
+    }
+    
+    
+    private boolean hasQueuedAncestor(Container c) {
+        for (; c != null; c = c.getParent()) {
+            if (queued.containsKey(c))
+                return true;
+        }
+        return false;
+    }
+    
+    
+    /** Styles added children, styling siblings together. */
+    private static void style(Component[] children) {
+        if (children.length == 0)
+            return;
+        Map<Container, List<Styleable>> siblings = 
+                new LinkedHashMap<Container, List<Styleable>>();
+        for (Component child : children) {
+            Container parent = child.getParent();
+            List<Styleable> list = siblings.get(parent);
+            if (list == null) {
+                list = new ArrayList<Styleable>();
+                siblings.put(parent, list);
+            }
+            list.add(TypeManager.getStyleable(child));
+        }
+        PropertyManager.beginBatch();
+        try {
+            for (Map.Entry<Container, List<Styleable>> e : 
+                    siblings.entrySet()) {
+                Styleable parent = TypeManager.getExistingStyleable(e.getKey());
+                if (parent instanceof DefaultStyleable) {
+                    List<Styleable> list = e.getValue();
+                    ((DefaultStyleable) parent).childrenAdded(
+                            list.toArray(new Styleable[list.size()]));
+                }
+            }
+        }
+        finally {
+            PropertyManager.endBatch();
+        }
+    }
+}
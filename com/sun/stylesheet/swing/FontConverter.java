@@ -25,6 +25,7 @@
 
 import java.awt.Font;
 
+import com.sun.stylesheet.types.ContextFreeConverter;
 import com.sun.stylesheet.types.TypeConverter;
 
 /**
@@ -33,7 +34,8 @@ import com.sun.stylesheet.types.TypeConverter;
  *
  *@author Ethan Nicholas
  */
-public class FontConverter implements TypeConverter<Font> {
+public class FontConverter implements TypeConverter<Font>, 
+        ContextFreeConverter {
     public Font convertFromString(String string) {
         if (string.equals("null"))
             return null;
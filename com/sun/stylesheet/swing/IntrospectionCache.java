@@ -0,0 +1,401 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.sun.stylesheet.styleable.GeneratedPropertyDescriptor;
+
+/**
+ * Stores the results of JavaBeans introspection on disk, so that later runs 
+ * can skip <code>Introspector.getBeanInfo</code> for classes which have not 
+ * changed.  Each class is stored in its own file, keyed by a hash of the 
+ * class files of the class, its superclasses and all of their interfaces 
+ * (and their explicit <code>BeanInfo</code> classes, if any).  Only plain and 
+ * indexed <code>PropertyDescriptors</code> can be stored;  classes with 
+ * property editors or other kinds of descriptor are introspected on every 
+ * run.
+ * <p>
+ * The cache lives in the platform's user cache directory.  The 
+ * <code>com.sun.stylesheet.cacheDir</code> system property specifies a 
+ * different directory, or disables the cache if it is empty.  Any problem 
+ * reading or writing the cache simply causes introspection to be performed 
+ * as usual.
+ */
+class IntrospectionCache {
+    private static final int MAGIC = 0x43535349; // "CSSI"
+    private static final int VERSION = 3;
+    
+    private static final byte STRING = 0;
+    private static final byte INTEGER = 1;
+    
+    private static final Class[] PRIMITIVES = { boolean.class, byte.class, 
+            short.class, char.class, int.class, long.class, float.class, 
+            double.class, void.class };
+    
+    private static File directory;
+    private static boolean directoryResolved;
+    
+    // hashes of individual class files, 0 if unavailable
+    private static final ClassValue<Long> classHashes = new ClassValue<Long>() {
+        protected Long computeValue(Class<?> cls) {
+            CRC32 crc = new CRC32();
+            if (!update(crc, cls, cls.getName()))
+                return 0L;
+            // explicit BeanInfo classes also affect introspection
+            update(crc, cls, cls.getName() + "BeanInfo");
+            return crc.getValue() | 1L << 32;
+        }
+    };
+    
+    private IntrospectionCache() { /* not instantiable */ }
+    
+    
+    private static synchronized File getDirectory() {
+        if (!directoryResolved) {
+            directoryResolved = true;
+            try {
+                String path = System.getProperty("com.sun.stylesheet.cacheDir");
+                if (path != null)
+                    directory = path.length() > 0 ? new File(path) : null;
+                else {
+                    String os = System.getProperty("os.name", "").toLowerCase();
+                    String home = System.getProperty("user.home");
+                    File base;
+                    if (os.startsWith("windows") && 
+                            System.getenv("LOCALAPPDATA") != null)
+                        base = new File(System.getenv("LOCALAPPDATA"));
+                    else if (os.startsWith("mac"))
+                        base = new File(home, "Library/Caches");
+                    else if (System.getenv("XDG_CACHE_HOME") != null)
+                        base = new File(System.getenv("XDG_CACHE_HOME"));
+                    else
+                        base = new File(home, ".cache");
+                    directory = new File(base, "java-css" + File.separator + 
+                            "introspection");
+                }
+            }
+            catch (SecurityException e) {
+                directory = null;
+            }
+        }
+        return directory;
+    }
+    
+    
+    /** Adds the named class file to the checksum, returning false if absent. */
+    private static boolean update(CRC32 crc, Class cls, String name) {
+        try {
+            InputStream in = cls.getResourceAsStream(
+                    "/" + name.replace('.', '/') + ".class");
+            if (in == null)
+                return false;
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1)
+                    crc.update(buffer, 0, count);
+            }
+            finally {
+                in.close();
+            }
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+        catch (SecurityException e) {
+            return false;
+        }
+    }
+    
+    
+    /** 
+     * Returns a hash of the class files which determine the introspection 
+     * results for the class, or 0 if they cannot all be read.
+     */
+    private static long getHash(Class cls) {
+        // interfaces contribute default methods and BeanInfo of their own
+        Set<Class> classes = new LinkedHashSet<Class>();
+        for (Class c = cls; c != null; c = c.getSuperclass())
+            addWithInterfaces(classes, c);
+        long result = 17;
+        for (Class c : classes) {
+            long hash = classHashes.get(c);
+            if (hash == 0)
+                return 0;
+            result = result * 31 + hash;
+        }
+        return result != 0 ? result : 1;
+    }
+    
+    
+    private static void addWithInterfaces(Set<Class> classes, Class cls) {
+        if (classes.add(cls)) {
+            for (Class i : cls.getInterfaces())
+                addWithInterfaces(classes, i);
+        }
+    }
+    
+    
+    private static File getFile(File directory, Class cls) {
+        return new File(directory, cls.getName() + ".bin");
+    }
+    
+    
+    private static Class forName(String name, Class beanClass) 
+            throws ClassNotFoundException {
+        if (name.length() == 0)
+            return null;
+        for (Class primitive : PRIMITIVES) {
+            if (primitive.getName().equals(name))
+                return primitive;
+        }
+        return Class.forName(name, false, beanClass.getClassLoader());
+    }
+    
+    
+    /** Returns the named public method, or <code>null</code> if unnamed. */
+    private static Method getMethod(Class<?> beanClass, String name, 
+            Class<?>... parameterTypes) throws NoSuchMethodException {
+        return name.length() > 0 ? beanClass.getMethod(name, parameterTypes) : 
+                null;
+    }
+    
+    
+    /**
+     * Returns the cached property descriptors of the class, or 
+     * <code>null</code> if they are not cached or the class has changed.
+     *
+     *@param beanClass the class whose properties are required
+     *@return the cached descriptors, or <code>null</code>
+     */
+    static PropertyDescriptor[] load(Class beanClass) {
+        File directory = getDirectory();
+        if (directory == null)
+            return null;
+        long hash = getHash(beanClass);
+        if (hash == 0)
+            return null;
+        try {
+            File file = getFile(directory, beanClass);
+            if (!file.isFile())
+                return null;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || 
+                        !in.readUTF().equals(beanClass.getName()) || 
+                        in.readLong() != hash)
+                    return null;
+                PropertyDescriptor[] result = 
+                        new PropertyDescriptor[in.readInt()];
+                for (int i = 0; i < result.length; i++) {
+                    String name = in.readUTF();
+                    Class type = forName(in.readUTF(), beanClass);
+                    String read = in.readUTF();
+                    String write = in.readUTF();
+                    if (in.readBoolean()) {
+                        Class indexedType = forName(in.readUTF(), beanClass);
+                        String indexedRead = in.readUTF();
+                        String indexedWrite = in.readUTF();
+                        result[i] = new IndexedPropertyDescriptor(name, 
+                                getMethod(beanClass, read), 
+                                getMethod(beanClass, write, type), 
+                                getMethod(beanClass, indexedRead, int.class), 
+                                getMethod(beanClass, indexedWrite, int.class, 
+                                    indexedType));
+                    }
+                    else {
+                        result[i] = new GeneratedPropertyDescriptor(name, 
+                                beanClass, type, 
+                                read.length() > 0 ? read : null,
+                                write.length() > 0 ? write : null, 
+                                null, i);
+                    }
+                    result[i].setBound(in.readBoolean());
+                    int count = in.readInt();
+                    if (count >= 0) {
+                        Object[] values = new Object[count];
+                        for (int j = 0; j < count; j++) {
+                            if (in.readByte() == STRING)
+                                values[j] = in.readUTF();
+                            else
+                                values[j] = Integer.valueOf(in.readInt());
+                        }
+                        result[i].setValue("enumerationValues", values);
+                    }
+                }
+                return result;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        catch (IntrospectionException e) {
+            return null;
+        }
+        catch (SecurityException e) {
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Stores the property descriptors of the class.  Classes whose 
+     * descriptors cannot be represented in the cache are not stored.
+     *
+     *@param beanClass the introspected class
+     *@param descriptors the class' property descriptors
+     */
+    static void store(Class beanClass, PropertyDescriptor[] descriptors) {
+        File directory = getDirectory();
+        if (directory == null)
+            return;
+        long hash = getHash(beanClass);
+        if (hash == 0)
+            return;
+        for (PropertyDescriptor d : descriptors) {
+            // only what load() can recreate
+            if (d.getPropertyEditorClass() != null || 
+                    (d.getClass() != PropertyDescriptor.class && 
+                    d.getClass() != IndexedPropertyDescriptor.class))
+                return;
+            Object values = d.getValue("enumerationValues");
+            if (values != null) {
+                if (!(values instanceof Object[]))
+                    return;
+                for (Object value : (Object[]) values) {
+                    if (!(value instanceof String) && 
+                            !(value instanceof Integer))
+                        return;
+                }
+            }
+        }
+        File temp = null;
+        try {
+            directory.mkdirs();
+            temp = File.createTempFile("introspection", ".tmp", directory);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(beanClass.getName());
+                out.writeLong(hash);
+                out.writeInt(descriptors.length);
+                for (PropertyDescriptor d : descriptors) {
+                    Class type = d.getPropertyType();
+                    Method read = d.getReadMethod();
+                    Method write = d.getWriteMethod();
+                    out.writeUTF(d.getName());
+                    out.writeUTF(type != null ? type.getName() : "");
+                    out.writeUTF(read != null ? read.getName() : "");
+                    out.writeUTF(write != null ? write.getName() : "");
+                    out.writeBoolean(d instanceof IndexedPropertyDescriptor);
+                    if (d instanceof IndexedPropertyDescriptor) {
+                        IndexedPropertyDescriptor indexed = 
+                                (IndexedPropertyDescriptor) d;
+                        Class indexedType = indexed.getIndexedPropertyType();
+                        read = indexed.getIndexedReadMethod();
+                        write = indexed.getIndexedWriteMethod();
+                        out.writeUTF(indexedType != null ? 
+                                indexedType.getName() : "");
+                        out.writeUTF(read != null ? read.getName() : "");
+                        out.writeUTF(write != null ? write.getName() : "");
+                    }
+                    out.writeBoolean(d.isBound());
+                    Object[] values = (Object[]) d.getValue("enumerationValues");
+                    if (values != null) {
+                        out.writeInt(values.length);
+                        for (Object value : values) {
+                            if (value instanceof String) {
+                                out.writeByte(STRING);
+                                out.writeUTF((String) value);
+                            }
+                            else {
+                                out.writeByte(INTEGER);
+                                out.writeInt((Integer) value);
+                            }
+                        }
+                    }
+                    else
+                        out.writeInt(-1);
+                }
+            }
+            finally {
+                out.close();
+            }
+            // replace atomically, so concurrent readers never see a partial 
+            // file
+            Files.move(temp.toPath(), getFile(directory, beanClass).toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING, 
+                    StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        }
+        catch (IOException e) {
+            // the cache is only an optimization
+        }
+        catch (SecurityException e) {
+        }
+        finally {
+            // left over if writing or moving it failed, e.g. on file systems 
+            // without atomic moves
+            if (temp != null) {
+                try {
+                    temp.delete();
+                }
+                catch (SecurityException e) {
+                }
+            }
+        }
+    }
+}
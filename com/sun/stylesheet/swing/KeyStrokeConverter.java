@@ -25,9 +25,11 @@
  
 import javax.swing.KeyStroke;
 
+import com.sun.stylesheet.types.ContextFreeConverter;
 import com.sun.stylesheet.types.TypeConverter;
 
-public class KeyStrokeConverter implements TypeConverter<KeyStroke> {
+public class KeyStrokeConverter implements TypeConverter<KeyStroke>, 
+        ContextFreeConverter {
     public KeyStroke convertFromString(String string) {
         if (string.equals("null"))
             return null;
@@ -0,0 +1,712 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import com.sun.stylesheet.PseudoclassEvent;
+import com.sun.stylesheet.PseudoclassListener;
+import com.sun.stylesheet.StylesheetException;
+import com.sun.stylesheet.styleable.DefaultPropertyHandler;
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.styleable.PropertyHandler;
+
+/**
+ * A compiled form of a programmatic pseudoclass such as 
+ * <code>:{value &lt;= 10}</code>.  Only the common subset of the expression 
+ * language is understood:  property reads, the comparison operators, 
+ * <code>!</code>, <code>&amp;&amp;</code>, <code>||</code> (and their 
+ * <code>eq</code>, <code>not</code>, <code>and</code>... spellings), 
+ * parentheses, and number, string, boolean and <code>null</code> literals.  
+ * {@link #compile} returns <code>null</code> for anything else, in which case 
+ * the expression is left to Beans Binding.
+ * <p>
+ * Properties are read through the property handlers of a single bean class, 
+ * and the predicate is re-evaluated only when one of the properties it reads 
+ * fires a <code>PropertyChangeEvent</code>.  Swing models report some state 
+ * (such as a slider's value) only through <code>ChangeEvents</code>, so beans 
+ * which accept a <code>ChangeListener</code> are listened to for those as 
+ * well.  All listeners waiting for the same predicate on the same object 
+ * share a single {@link Watcher}.
+ */
+class PropertyPredicate {
+    private static final Class<?>[] PROPERTY_LISTENER_PARAMETERS = 
+            { String.class, PropertyChangeListener.class };
+    private static final Class<?>[] CHANGE_LISTENER_PARAMETERS = 
+            { ChangeListener.class };
+    
+    /** The slot in which each object's watchers are kept. */
+    private static final DefaultStyleable.Key<Map<PropertyPredicate, Watcher>> 
+            WATCHERS = new DefaultStyleable.Key<Map<PropertyPredicate, Watcher>>();
+    
+    private final Node root;
+    
+    /** The names of the bean properties the expression reads. */
+    private final String[] dependencies;
+    
+    private final Method addPropertyChangeListener;
+    private final Method removePropertyChangeListener;
+    private final Method addChangeListener;
+    private final Method removeChangeListener;
+    
+    
+    /** A node of the expression tree. */
+    private static abstract class Node {
+        abstract Object evaluate(Object bean) throws StylesheetException;
+    }
+    
+    
+    private static class Literal extends Node {
+        private final Object value;
+        
+        Literal(Object value) {
+            this.value = value;
+        }
+        
+        Object evaluate(Object bean) {
+            return value;
+        }
+    }
+    
+    
+    private static class Read extends Node {
+        private final PropertyHandler handler;
+        
+        Read(PropertyHandler handler) {
+            this.handler = handler;
+        }
+        
+        Object evaluate(Object bean) throws StylesheetException {
+            return handler.getProperty(bean);
+        }
+    }
+    
+    
+    private static class Not extends Node {
+        private final Node operand;
+        
+        Not(Node operand) {
+            this.operand = operand;
+        }
+        
+        Object evaluate(Object bean) throws StylesheetException {
+            return Boolean.valueOf(!toBoolean(operand.evaluate(bean)));
+        }
+    }
+    
+    
+    private static class Binary extends Node {
+        private final String operator;
+        private final Node left;
+        private final Node right;
+        
+        Binary(String operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        
+        Object evaluate(Object bean) throws StylesheetException {
+            if (operator == "&&")
+                return Boolean.valueOf(toBoolean(left.evaluate(bean)) && 
+                        toBoolean(right.evaluate(bean)));
+            if (operator == "||")
+                return Boolean.valueOf(toBoolean(left.evaluate(bean)) || 
+                        toBoolean(right.evaluate(bean)));
+            Object a = left.evaluate(bean);
+            Object b = right.evaluate(bean);
+            if (operator == "==")
+                return Boolean.valueOf(isEqual(a, b));
+            if (operator == "!=")
+                return Boolean.valueOf(!isEqual(a, b));
+            // as in the expression language, identical operands (including 
+            // two nulls) satisfy <= and >= before nulls are ruled out
+            if (a == b)
+                return Boolean.valueOf(operator == "<=" || operator == ">=");
+            if (a == null || b == null)
+                return Boolean.FALSE;
+            int result = compare(a, b);
+            if (operator == "<")
+                return Boolean.valueOf(result < 0);
+            if (operator == "<=")
+                return Boolean.valueOf(result <= 0);
+            if (operator == ">")
+                return Boolean.valueOf(result > 0);
+            return Boolean.valueOf(result >= 0);
+        }
+    }
+    
+    
+    /** 
+     * A recursive descent parser for the supported subset.  Anything outside 
+     * of it results in an <code>IllegalArgumentException</code>.
+     */
+    private static class Parser {
+        private final String text;
+        private final BeanStyleSupport support;
+        private final Set<String> dependencies = new LinkedHashSet<String>();
+        private int pos;
+        
+        Parser(String text, BeanStyleSupport support) {
+            this.text = text;
+            this.support = support;
+        }
+        
+        
+        Node parse() {
+            Node result = parseOr();
+            skipWhitespace();
+            if (pos < text.length())
+                throw unsupported();
+            return result;
+        }
+        
+        
+        private Node parseOr() {
+            Node result = parseAnd();
+            while (accept("||") || acceptWord("or"))
+                result = new Binary("||", result, parseAnd());
+            return result;
+        }
+        
+        
+        private Node parseAnd() {
+            Node result = parseEquality();
+            while (accept("&&") || acceptWord("and"))
+                result = new Binary("&&", result, parseEquality());
+            return result;
+        }
+        
+        
+        private Node parseEquality() {
+            Node result = parseRelational();
+            for (;;) {
+                if (accept("==") || acceptWord("eq"))
+                    result = new Binary("==", result, parseRelational());
+                else if (accept("!=") || acceptWord("ne"))
+                    result = new Binary("!=", result, parseRelational());
+                else
+                    return result;
+            }
+        }
+        
+        
+        private Node parseRelational() {
+            Node result = parseUnary();
+            for (;;) {
+                if (accept("<=") || acceptWord("le"))
+                    result = new Binary("<=", result, parseUnary());
+                else if (accept(">=") || acceptWord("ge"))
+                    result = new Binary(">=", result, parseUnary());
+                else if (accept("<") || acceptWord("lt"))
+                    result = new Binary("<", result, parseUnary());
+                else if (accept(">") || acceptWord("gt"))
+                    result = new Binary(">", result, parseUnary());
+                else
+                    return result;
+            }
+        }
+        
+        
+        private Node parseUnary() {
+            if (accept("!") || acceptWord("not"))
+                return new Not(parseUnary());
+            return parsePrimary();
+        }
+        
+        
+        private Node parsePrimary() {
+            skipWhitespace();
+            if (pos == text.length())
+                throw unsupported();
+            char c = text.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Node result = parseOr();
+                if (!accept(")"))
+                    throw unsupported();
+                return result;
+            }
+            if (c == '\'' || c == '"')
+                return new Literal(parseString(c));
+            if (c == '-' || Character.isDigit(c))
+                return new Literal(parseNumber());
+            if (Character.isJavaIdentifierStart(c)) {
+                String word = parseWord();
+                if (word.equals("true"))
+                    return new Literal(Boolean.TRUE);
+                if (word.equals("false"))
+                    return new Literal(Boolean.FALSE);
+                if (word.equals("null"))
+                    return new Literal(null);
+                if (isReserved(word) || (pos < text.length() && 
+                        (text.charAt(pos) == '.' || text.charAt(pos) == '[' ||
+                        text.charAt(pos) == '(')))
+                    throw unsupported();
+                // only real bean properties can be watched by name
+                PropertyHandler handler = support.getPropertyHandler(word);
+                if (!(handler instanceof DefaultPropertyHandler) || 
+                        !((DefaultPropertyHandler) handler).
+                            getPropertyDescriptor().getName().equals(word))
+                    throw unsupported();
+                dependencies.add(word);
+                return new Read(handler);
+            }
+            throw unsupported();
+        }
+        
+        
+        private String parseString(char quote) {
+            StringBuilder result = new StringBuilder();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == quote)
+                    return result.toString();
+                if (c == '\\') {
+                    if (pos == text.length())
+                        break;
+                    c = text.charAt(pos++);
+                }
+                result.append(c);
+            }
+            throw unsupported();
+        }
+        
+        
+        private Number parseNumber() {
+            int start = pos;
+            if (text.charAt(pos) == '-')
+                pos++;
+            boolean decimal = false;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E')
+                    decimal = true;
+                else if (!Character.isDigit(c) && 
+                        !((c == '-' || c == '+') && 
+                        Character.toLowerCase(text.charAt(pos - 1)) == 'e'))
+                    break;
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            if (decimal)
+                return Double.valueOf(number);
+            return Long.valueOf(number);
+        }
+        
+        
+        private String parseWord() {
+            int start = pos;
+            while (pos < text.length() && 
+                    Character.isJavaIdentifierPart(text.charAt(pos)))
+                pos++;
+            return text.substring(start, pos);
+        }
+        
+        
+        private boolean accept(String token) {
+            skipWhitespace();
+            if (text.startsWith(token, pos)) {
+                // don't mistake the start of != for a !
+                if (token.equals("!") && text.startsWith("!=", pos))
+                    return false;
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+        
+        
+        private boolean acceptWord(String word) {
+            skipWhitespace();
+            int end = pos + word.length();
+            if (text.startsWith(word, pos) && (end == text.length() || 
+                    !Character.isJavaIdentifierPart(text.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+        
+        
+        private void skipWhitespace() {
+            while (pos < text.length() && 
+                    Character.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+        
+        
+        private IllegalArgumentException unsupported() {
+            return new IllegalArgumentException("unsupported expression: " + 
+                    text);
+        }
+    }
+    
+    
+    /** 
+     * Tracks the value of a predicate for one object, notifying the 
+     * pseudoclass listeners of that object when it changes.
+     */
+    private static class Watcher 
+            implements PropertyChangeListener, ChangeListener {
+        private final PropertyPredicate predicate;
+        private final Object bean;
+        private boolean value;
+        
+        /** Listeners and their events, replaced rather than modified. */
+        private PseudoclassListener[] listeners = new PseudoclassListener[0];
+        private PseudoclassEvent[] events = new PseudoclassEvent[0];
+        
+        
+        Watcher(PropertyPredicate predicate, Object bean) 
+                throws StylesheetException {
+            this.predicate = predicate;
+            this.bean = bean;
+            value = predicate.evaluate(bean);
+        }
+        
+        
+        public void propertyChange(PropertyChangeEvent e) {
+            update();
+        }
+        
+        
+        public void stateChanged(ChangeEvent e) {
+            update();
+        }
+        
+        
+        private void update() {
+            boolean newValue;
+            try {
+                newValue = predicate.evaluate(bean);
+            }
+            catch (StylesheetException e) {
+                throw new RuntimeException(e);
+            }
+            PseudoclassListener[] listeners;
+            PseudoclassEvent[] events;
+            synchronized (this) {
+                if (newValue == value)
+                    return;
+                value = newValue;
+                listeners = this.listeners;
+                events = this.events;
+            }
+            for (int i = 0; i < listeners.length; i++) {
+                if (newValue)
+                    listeners[i].pseudoclassAdded(events[i]);
+                else
+                    listeners[i].pseudoclassRemoved(events[i]);
+            }
+        }
+    }
+    
+    
+    private PropertyPredicate(Node root, String[] dependencies, 
+            Method addPropertyChangeListener, 
+            Method removePropertyChangeListener, Method addChangeListener, 
+            Method removeChangeListener) {
+        this.root = root;
+        this.dependencies = dependencies;
+        this.addPropertyChangeListener = addPropertyChangeListener;
+        this.removePropertyChangeListener = removePropertyChangeListener;
+        this.addChangeListener = addChangeListener;
+        this.removeChangeListener = removeChangeListener;
+    }
+    
+    
+    /**
+     * Compiles an expression for instances of the class supported by 
+     * <code>support</code>.
+     *
+     *@param expression the expression, without its surrounding braces
+     *@param support the style support of the bean class
+     *@return the predicate, or <code>null</code> if the expression is not 
+     *      supported or the class does not fire the events needed to track it
+     */
+    static PropertyPredicate compile(String expression, 
+            BeanStyleSupport support) {
+        Parser parser = new Parser(expression, support);
+        Node root;
+        try {
+            root = parser.parse();
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+        
+        Class beanClass = support.getBeanClass();
+        Method addPropertyChangeListener = getMethod(beanClass, 
+                "addPropertyChangeListener", PROPERTY_LISTENER_PARAMETERS);
+        Method removePropertyChangeListener = getMethod(beanClass, 
+                "removePropertyChangeListener", PROPERTY_LISTENER_PARAMETERS);
+        Method addChangeListener = getMethod(beanClass, "addChangeListener", 
+                CHANGE_LISTENER_PARAMETERS);
+        Method removeChangeListener = getMethod(beanClass, 
+                "removeChangeListener", CHANGE_LISTENER_PARAMETERS);
+        if (addPropertyChangeListener == null || 
+                removePropertyChangeListener == null)
+            return null;
+        if (addChangeListener == null || removeChangeListener == null) {
+            addChangeListener = null;
+            removeChangeListener = null;
+            // without ChangeEvents, unbound properties cannot be tracked
+            for (String name : parser.dependencies) {
+                DefaultPropertyHandler handler = (DefaultPropertyHandler) 
+                        support.getPropertyHandler(name);
+                if (handler == null || 
+                        !handler.getPropertyDescriptor().isBound())
+                    return null;
+            }
+        }
+        return new PropertyPredicate(root, 
+                parser.dependencies.toArray(
+                    new String[parser.dependencies.size()]), 
+                addPropertyChangeListener, removePropertyChangeListener, 
+                addChangeListener, removeChangeListener);
+    }
+    
+    
+    private static Method getMethod(Class<?> beanClass, String name, 
+            Class<?>[] parameters) {
+        try {
+            return beanClass.getMethod(name, parameters);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    
+    /** Evaluates the predicate against an instance of its bean class. */
+    boolean evaluate(Object bean) throws StylesheetException {
+        return Boolean.TRUE.equals(root.evaluate(bean));
+    }
+    
+    
+    /**
+     * Adds a listener which is notified as the predicate becomes true or 
+     * false for the styleable's base object, notifying it immediately if the 
+     * predicate is currently true.
+     */
+    static void addPseudoclassListener(PropertyPredicate predicate, 
+            DefaultStyleable styleable, PseudoclassListener listener, 
+            PseudoclassEvent event) throws StylesheetException {
+        boolean active;
+        synchronized (PropertyPredicate.class) {
+            Map<PropertyPredicate, Watcher> watchers = getWatchers(styleable);
+            if (watchers == null) {
+                watchers = new IdentityHashMap<PropertyPredicate, Watcher>();
+                styleable.setAttachment(WATCHERS, watchers);
+            }
+            Watcher watcher = watchers.get(predicate);
+            if (watcher == null) {
+                watcher = new Watcher(predicate, styleable.getBaseObject());
+                predicate.install(watcher);
+                watchers.put(predicate, watcher);
+            }
+            synchronized (watcher) {
+                int length = watcher.listeners.length;
+                PseudoclassListener[] listeners = 
+                        new PseudoclassListener[length + 1];
+                PseudoclassEvent[] events = new PseudoclassEvent[length + 1];
+                System.arraycopy(watcher.listeners, 0, listeners, 0, length);
+                System.arraycopy(watcher.events, 0, events, 0, length);
+                listeners[length] = listener;
+                events[length] = event;
+                watcher.listeners = listeners;
+                watcher.events = events;
+                active = watcher.value;
+            }
+        }
+        if (active)
+            listener.pseudoclassAdded(event);
+    }
+    
+    
+    /** Removes a listener added with {@link #addPseudoclassListener}. */
+    static void removePseudoclassListener(PropertyPredicate predicate, 
+            DefaultStyleable styleable, PseudoclassListener listener) 
+            throws StylesheetException {
+        synchronized (PropertyPredicate.class) {
+            Map<PropertyPredicate, Watcher> watchers = getWatchers(styleable);
+            Watcher watcher = watchers != null ? watchers.get(predicate) : null;
+            if (watcher == null)
+                return;
+            synchronized (watcher) {
+                PseudoclassListener[] old = watcher.listeners;
+                for (int i = 0; i < old.length; i++) {
+                    if (old[i] == listener) {
+                        PseudoclassListener[] listeners = 
+                                new PseudoclassListener[old.length - 1];
+                        PseudoclassEvent[] events = 
+                                new PseudoclassEvent[old.length - 1];
+                        System.arraycopy(old, 0, listeners, 0, i);
+                        System.arraycopy(old, i + 1, listeners, i, 
+                                listeners.length - i);
+                        System.arraycopy(watcher.events, 0, events, 0, i);
+                        System.arraycopy(watcher.events, i + 1, events, i, 
+                                events.length - i);
+                        watcher.listeners = listeners;
+                        watcher.events = events;
+                        break;
+                    }
+                }
+                if (watcher.listeners.length > 0)
+                    return;
+            }
+            watchers.remove(predicate);
+            if (watchers.isEmpty())
+                styleable.setAttachment(WATCHERS, null);
+            predicate.uninstall(watcher);
+        }
+    }
+    
+    
+    private static Map<PropertyPredicate, Watcher> getWatchers(
+            DefaultStyleable styleable) {
+        return styleable.getAttachment(WATCHERS);
+    }
+    
+    
+    private void install(Watcher watcher) throws StylesheetException {
+        for (String name : dependencies)
+            invoke(addPropertyChangeListener, watcher.bean, name, watcher);
+        if (addChangeListener != null)
+            invoke(addChangeListener, watcher.bean, watcher);
+    }
+    
+    
+    private void uninstall(Watcher watcher) throws StylesheetException {
+        for (String name : dependencies)
+            invoke(removePropertyChangeListener, watcher.bean, name, watcher);
+        if (removeChangeListener != null)
+            invoke(removeChangeListener, watcher.bean, watcher);
+    }
+    
+    
+    private static void invoke(Method method, Object bean, Object... args) 
+            throws StylesheetException {
+        try {
+            method.invoke(bean, args);
+        }
+        catch (IllegalAccessException e) {
+            throw new StylesheetException(e);
+        }
+        catch (InvocationTargetException e) {
+            throw new StylesheetException(e.getCause());
+        }
+    }
+    
+    
+    private static boolean toBoolean(Object value) {
+        if (value == null)
+            return false;
+        if (value instanceof Boolean)
+            return ((Boolean) value).booleanValue();
+        if (value instanceof String)
+            return Boolean.valueOf((String) value).booleanValue();
+        throw new IllegalArgumentException("expected a boolean, found " + 
+                value);
+    }
+    
+    
+    private static boolean isFloatingPoint(Object value) {
+        return value instanceof Double || value instanceof Float || 
+                value instanceof BigDecimal;
+    }
+    
+    
+    /** Equality with the coercions of the expression language. */
+    private static boolean isEqual(Object a, Object b) {
+        if (a == b)
+            return true;
+        if (a == null || b == null)
+            return false;
+        if (a instanceof Number && b instanceof Number) {
+            if (isFloatingPoint(a) || isFloatingPoint(b))
+                return ((Number) a).doubleValue() == 
+                        ((Number) b).doubleValue();
+            return ((Number) a).longValue() == ((Number) b).longValue();
+        }
+        if (a instanceof String && !(b instanceof String)) {
+            Object swap = a;
+            a = b;
+            b = swap;
+        }
+        if (b instanceof String) {
+            if (a instanceof Enum)
+                return ((Enum) a).name().equals(b);
+            if (a instanceof Boolean)
+                return a.equals(Boolean.valueOf((String) b));
+            if (a instanceof Character)
+                return a.toString().equals(b);
+            if (a instanceof Number)
+                return compare(a, b) == 0;
+        }
+        return a.equals(b);
+    }
+    
+    
+    /** Ordering with the coercions of the expression language. */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a instanceof String && b instanceof Number)
+            return -compare(b, a);
+        if (a instanceof Number && b instanceof String)
+            b = Double.valueOf((String) b);
+        if (a instanceof Number && b instanceof Number) {
+            if (isFloatingPoint(a) || isFloatingPoint(b))
+                return Double.compare(((Number) a).doubleValue(), 
+                        ((Number) b).doubleValue());
+            long x = ((Number) a).longValue();
+            long y = ((Number) b).longValue();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+        if (a instanceof Comparable && a.getClass().isInstance(b))
+            return ((Comparable) a).compareTo(b);
+        throw new IllegalArgumentException("cannot compare " + a + " to " + 
+                b);
+    }
+    
+    
+    private static boolean isReserved(String word) {
+        return word.equals("empty") || word.equals("div") || 
+                word.equals("mod") || word.equals("instanceof");
+    }
+}
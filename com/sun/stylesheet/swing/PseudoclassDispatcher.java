@@ -0,0 +1,536 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractButton;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import com.sun.stylesheet.PropertyManager;
+import com.sun.stylesheet.PseudoclassEvent;
+import com.sun.stylesheet.PseudoclassListener;
+import com.sun.stylesheet.Styleable;
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Maintains the mouse, focus, window activation and button armed 
+ * pseudoclasses of all styled components from a single 
+ * <code>AWTEventListener</code>.  Each 
+ * component with pseudoclass listeners has a {@link State} holding a bit per 
+ * pseudoclass;  listeners are notified only when the bit they depend on 
+ * actually changes.
+ * <p>
+ * Lightweight components only receive mouse events if they listen for them, 
+ * so components with mouse pseudoclass listeners are given a single shared 
+ * (and empty) <code>MouseListener</code>.  If the global listener cannot be 
+ * installed, the dispatcher itself is added to each component as a listener 
+ * instead.
+ * <p>
+ * Arming is not reported through AWT events, so buttons with 
+ * <code>armed</code> listeners are given the dispatcher as their one 
+ * <code>ChangeListener</code> (however many rules wait for the pseudoclass), 
+ * which updates the same state as the global listener.
+ * <p>
+ * Changes made on the event dispatch thread are not passed on immediately.  
+ * The component is marked dirty and all dirty components are brought up to 
+ * date together once the current event has been processed, so that a burst 
+ * of events (the mouse sweeping across a grid of components, say) restyles 
+ * each component at most once, and a component which the mouse enters and 
+ * leaves again in the meantime is not restyled at all.
+ */
+class PseudoclassDispatcher extends WindowAdapter 
+        implements AWTEventListener, MouseListener, FocusListener, 
+        ChangeListener, Runnable {
+    static final int MOUSEOVER = 1;
+    static final int MOUSEDOWN = 2;
+    static final int FOCUSED   = 4;
+    static final int ACTIVE    = 8;
+    static final int ARMED     = 16;
+    
+    private static final int FLAG_COUNT = 5;
+    
+    private static final long EVENT_MASK = AWTEvent.MOUSE_EVENT_MASK | 
+            AWTEvent.FOCUS_EVENT_MASK | AWTEvent.WINDOW_EVENT_MASK;
+    
+    /** Makes lightweight components the target of mouse events. */
+    private static final MouseListener MOUSE_TARGET = new MouseAdapter() { };
+    
+    private static PseudoclassDispatcher instance;
+    private static boolean global;
+    
+    /** States whose bits have changed since listeners were last notified. */
+    private final List<State> dirty = new ArrayList<State>();
+    
+    
+    /** A listener waiting for one pseudoclass of a component. */
+    private static class Entry {
+        final PseudoclassListener listener;
+        final PseudoclassEvent event;
+        final boolean inverse;
+        
+        Entry(PseudoclassListener listener, PseudoclassEvent event, 
+                boolean inverse) {
+            this.listener = listener;
+            this.event = event;
+            this.inverse = inverse;
+        }
+    }
+    
+    
+    /** The slot in which each component's {@link State} is kept. */
+    private static final DefaultStyleable.Key<State> STATE = 
+            new DefaultStyleable.Key<State>();
+    
+    
+    /** The pseudoclass state of a single component. */
+    static class State {
+        /** The current state. */
+        private int bits;
+        
+        /** The state listeners have been told about. */
+        private int committed;
+        
+        /** True while the state is waiting in the dirty list. */
+        private boolean dirty;
+        
+        /** Listeners by flag index, replaced rather than modified. */
+        private final Entry[][] entries = new Entry[FLAG_COUNT][];
+        
+        /** Flags for which the component has been hooked up. */
+        private int hooked;
+        
+        
+        State(Component component) {
+            if (component.hasFocus())
+                bits |= FOCUSED;
+            if (component instanceof Window && ((Window) component).isActive())
+                bits |= ACTIVE;
+            committed = bits;
+        }
+    }
+    
+    
+    private PseudoclassDispatcher() {
+    }
+    
+    
+    private static synchronized PseudoclassDispatcher getInstance() {
+        if (instance == null) {
+            instance = new PseudoclassDispatcher();
+            try {
+                Toolkit.getDefaultToolkit().addAWTEventListener(instance, 
+                        EVENT_MASK);
+                global = true;
+            }
+            catch (SecurityException e) {
+                // requires the listenToAllAWTEvents permission, fall back to 
+                // listening to each component
+            }
+        }
+        return instance;
+    }
+    
+    
+    /**
+     * Returns the flag for the specified pseudoclass of an object, or 
+     * <code>0</code> if it is not handled here.  Windows additionally support 
+     * <code>active</code> and <code>inactive</code>, and buttons 
+     * <code>armed</code> and <code>unarmed</code>.
+     */
+    static int getFlag(String pseudoclass, Object object) {
+        if (pseudoclass.equals("mouseover") || pseudoclass.equals("mouseout"))
+            return MOUSEOVER;
+        if (pseudoclass.equals("mousedown") || pseudoclass.equals("mouseup"))
+            return MOUSEDOWN;
+        if (pseudoclass.equals("focused") || pseudoclass.equals("unfocused"))
+            return FOCUSED;
+        if (object instanceof Window && (pseudoclass.equals("active") || 
+                pseudoclass.equals("inactive")))
+            return ACTIVE;
+        if (object instanceof AbstractButton && (pseudoclass.equals("armed") || 
+                pseudoclass.equals("unarmed")))
+            return ARMED;
+        return 0;
+    }
+    
+    
+    private static boolean isInverse(String pseudoclass) {
+        return pseudoclass.equals("mouseout") || pseudoclass.equals("mouseup") 
+                || pseudoclass.equals("unfocused") || 
+                pseudoclass.equals("inactive") || 
+                pseudoclass.equals("unarmed");
+    }
+    
+    
+    private static int indexOf(int flag) {
+        return Integer.numberOfTrailingZeros(flag);
+    }
+    
+    
+    /**
+     * Adds a listener for one of the pseudoclasses supported by {@link 
+     * #getFlag}, notifying it immediately if the pseudoclass is in effect.
+     */
+    static void addPseudoclassListener(DefaultStyleable styleable, 
+            String pseudoclass, PseudoclassListener listener) {
+        PseudoclassDispatcher dispatcher = getInstance();
+        Component component = (Component) styleable.getBaseObject();
+        int flag = getFlag(pseudoclass, component);
+        boolean inverse = isInverse(pseudoclass);
+        PseudoclassEvent event = new PseudoclassEvent(styleable, pseudoclass);
+        boolean active;
+        synchronized (PseudoclassDispatcher.class) {
+            State state = styleable.getAttachment(STATE);
+            if (state == null) {
+                state = new State(component);
+                styleable.setAttachment(STATE, state);
+            }
+            synchronized (state) {
+                int index = indexOf(flag);
+                Entry[] old = state.entries[index];
+                Entry[] entries;
+                if (old == null)
+                    entries = new Entry[1];
+                else {
+                    entries = new Entry[old.length + 1];
+                    System.arraycopy(old, 0, entries, 0, old.length);
+                }
+                entries[entries.length - 1] = new Entry(listener, event, 
+                        inverse);
+                state.entries[index] = entries;
+                if ((state.hooked & flag) == 0) {
+                    state.hooked |= flag;
+                    dispatcher.hook(component, state, flag);
+                }
+                active = ((state.committed & flag) != 0) != inverse;
+            }
+        }
+        if (active)
+            listener.pseudoclassAdded(event);
+    }
+    
+    
+    /** Removes a listener added with {@link #addPseudoclassListener}. */
+    static void removePseudoclassListener(DefaultStyleable styleable, 
+            String pseudoclass, PseudoclassListener listener) {
+        State state = styleable.getAttachment(STATE);
+        if (state == null)
+            return;
+        Component component = (Component) styleable.getBaseObject();
+        int flag = getFlag(pseudoclass, component);
+        int index = indexOf(flag);
+        boolean inverse = isInverse(pseudoclass);
+        synchronized (state) {
+            Entry[] old = state.entries[index];
+            if (old == null)
+                return;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i].listener == listener && old[i].inverse == inverse) {
+                    Entry[] entries = null;
+                    if (old.length > 1) {
+                        entries = new Entry[old.length - 1];
+                        System.arraycopy(old, 0, entries, 0, i);
+                        System.arraycopy(old, i + 1, entries, i, 
+                                entries.length - i);
+                    }
+                    state.entries[index] = entries;
+                    if (entries == null)
+                        getInstance().unhook(component, state, flag);
+                    return;
+                }
+            }
+        }
+    }
+    
+    
+    /** 
+     * Ensures that the component's events for the flag reach us.  Called 
+     * with the state locked.
+     */
+    private void hook(Component component, State state, int flag) {
+        switch (flag) {
+            case MOUSEOVER:
+            case MOUSEDOWN:
+                MouseListener mouse = global ? MOUSE_TARGET : this;
+                for (MouseListener l : component.getMouseListeners()) {
+                    if (l == mouse)
+                        return;
+                }
+                component.addMouseListener(mouse);
+                break;
+            case FOCUSED:
+                if (!global) {
+                    component.addFocusListener(this);
+                    resync(state, FOCUSED, component.hasFocus());
+                }
+                break;
+            case ACTIVE:
+                if (!global) {
+                    ((Window) component).addWindowListener(this);
+                    resync(state, ACTIVE, ((Window) component).isActive());
+                }
+                break;
+            case ARMED:
+                AbstractButton button = (AbstractButton) component;
+                button.addChangeListener(this);
+                resync(state, ARMED, button.getModel().isArmed());
+                break;
+        }
+    }
+    
+    
+    /** 
+     * Undoes {@link #hook} once no listeners wait for the flag, so that 
+     * components no longer styled by mouse pseudoclasses stop capturing 
+     * mouse events meant for their ancestors.  Called with the state locked.
+     */
+    private void unhook(Component component, State state, int flag) {
+        state.hooked &= ~flag;
+        switch (flag) {
+            case MOUSEOVER:
+            case MOUSEDOWN:
+                // no longer tracked, so it must not be trusted when rehooked
+                resync(state, flag, false);
+                if ((state.hooked & (MOUSEOVER | MOUSEDOWN)) == 0)
+                    component.removeMouseListener(global ? MOUSE_TARGET : this);
+                break;
+            case FOCUSED:
+                if (!global)
+                    component.removeFocusListener(this);
+                break;
+            case ACTIVE:
+                if (!global)
+                    ((Window) component).removeWindowListener(this);
+                break;
+            case ARMED:
+                ((AbstractButton) component).removeChangeListener(this);
+                break;
+        }
+    }
+    
+    
+    /** Sets an untracked flag without notifying anyone. */
+    private static void resync(State state, int flag, boolean set) {
+        if (set) {
+            state.bits |= flag;
+            state.committed |= flag;
+        }
+        else {
+            state.bits &= ~flag;
+            state.committed &= ~flag;
+        }
+    }
+    
+    
+    /** 
+     * Sets or clears a flag of the component, notifying listeners now or at 
+     * the end of the current event.
+     */
+    private void update(Component component, int flag, boolean set) {
+        Styleable styleable = TypeManager.getExistingStyleable(component);
+        if (!(styleable instanceof DefaultStyleable))
+            return;
+        State state = ((DefaultStyleable) styleable).getAttachment(STATE);
+        if (state == null)
+            return;
+        synchronized (state) {
+            if (((state.bits & flag) != 0) == set)
+                return;
+            state.bits ^= flag;
+        }
+        if (!EventQueue.isDispatchThread())
+            commit(state);
+        else {
+            synchronized (this) {
+                if (!state.dirty) {
+                    state.dirty = true;
+                    if (dirty.isEmpty())
+                        EventQueue.invokeLater(this);
+                    dirty.add(state);
+                }
+            }
+        }
+    }
+    
+    
+    /** Notifies the listeners of all dirty states. */
+    public void run() {
+        State[] states;
+        synchronized (this) {
+            states = dirty.toArray(new State[dirty.size()]);
+            dirty.clear();
+            for (State state : states)
+                state.dirty = false;
+        }
+        PropertyManager.beginBatch();
+        try {
+            for (State state : states)
+                commit(state);
+        }
+        finally {
+            PropertyManager.endBatch();
+        }
+    }
+    
+    
+    /** Notifies listeners of the flags which changed since the last commit. */
+    private static void commit(State state) {
+        int changed;
+        int bits;
+        Entry[][] entries = new Entry[FLAG_COUNT][];
+        synchronized (state) {
+            bits = state.bits;
+            changed = bits ^ state.committed;
+            state.committed = bits;
+            for (int i = 0; i < FLAG_COUNT; i++) {
+                if ((changed & (1 << i)) != 0)
+                    entries[i] = state.entries[i];
+            }
+        }
+        for (int i = 0; i < FLAG_COUNT; i++) {
+            if (entries[i] == null)
+                continue;
+            boolean set = (bits & (1 << i)) != 0;
+            for (Entry e : entries[i]) {
+                if (set != e.inverse)
+                    e.listener.pseudoclassAdded(e.event);
+                else
+                    e.listener.pseudoclassRemoved(e.event);
+            }
+        }
+    }
+    
+    
+    public void eventDispatched(AWTEvent event) {
+        dispatch(event);
+    }
+    
+    
+    private void dispatch(AWTEvent event) {
+        Object source = event.getSource();
+        if (!(source instanceof Component))
+            return;
+        Component component = (Component) source;
+        switch (event.getID()) {
+            case MouseEvent.MOUSE_ENTERED:
+                update(component, MOUSEOVER, true);
+                break;
+            case MouseEvent.MOUSE_EXITED:
+                update(component, MOUSEOVER, false);
+                break;
+            case MouseEvent.MOUSE_PRESSED:
+                update(component, MOUSEDOWN, true);
+                break;
+            case MouseEvent.MOUSE_RELEASED:
+                update(component, MOUSEDOWN, false);
+                break;
+            case FocusEvent.FOCUS_GAINED:
+                update(component, FOCUSED, true);
+                break;
+            case FocusEvent.FOCUS_LOST:
+                update(component, FOCUSED, false);
+                break;
+            case WindowEvent.WINDOW_ACTIVATED:
+                update(component, ACTIVE, true);
+                break;
+            case WindowEvent.WINDOW_DEACTIVATED:
+                update(component, ACTIVE, false);
+                break;
+        }
+    }
+    
+    
+    // per-component listener methods, used only without the global listener
+    
+    public void mouseEntered(MouseEvent e) {
+        dispatch(e);
+    }
+    
+    
+    public void mouseExited(MouseEvent e) {
+        dispatch(e);
+    }
+    
+    
+    public void mousePressed(MouseEvent e) {
+        dispatch(e);
+    }
+    
+    
+    public void mouseReleased(MouseEvent e) {
+        dispatch(e);
+    }
+    
+    
+    public void mouseClicked(MouseEvent e) {
+    }
+    
+    
+    public void focusGained(FocusEvent e) {
+        dispatch(e);
+    }
+    
+    
+    public void focusLost(FocusEvent e) {
+        dispatch(e);
+    }
+    
+    
+    @Override
+    public void windowActivated(WindowEvent e) {
+        dispatch(e);
+    }
+    
+    
+    @Override
+    public void windowDeactivated(WindowEvent e) {
+        dispatch(e);
+    }
+    
+    
+    // added to every button with armed listeners, global listener or not
+    
+    public void stateChanged(ChangeEvent e) {
+        AbstractButton button = (AbstractButton) e.getSource();
+        update(button, ARMED, button.getModel().isArmed());
+    }
+}
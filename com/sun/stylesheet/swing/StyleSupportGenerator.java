@@ -0,0 +1,457 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.sun.stylesheet.styleable.StyleSupport;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Generates <code>StyleSupport</code> classes ahead of time, so that styling 
+ * common classes does not require JavaBeans introspection at runtime.
+ * <p>
+ * For each class, the generator emits a subclass of the 
+ * <code>BeanStyleSupport</code> registered for it with {@link 
+ * TypeManager#registerStyleSupport}.  The generated class returns 
+ * precomputed property descriptors and reads and writes properties by 
+ * calling their accessor methods directly.  The generator also writes the 
+ * {@link TypeManager#GENERATED_STYLE_SUPPORT_INDEX} resource, which 
+ * <code>TypeManager</code> uses to find the generated classes;  it must be 
+ * packaged along with the compiled classes.
+ * <p>
+ * Usage:
+ * <pre>
+ * java com.sun.stylesheet.swing.StyleSupportGenerator -out &lt;dir&gt; 
+ *         [-package &lt;name&gt;] (&lt;class&gt; | @&lt;class list file&gt;)...
+ * </pre>
+ * Generated classes should be regenerated whenever the library or the 
+ * supported classes change.  Properties which cannot be accessed directly 
+ * from the generated package fall back to reflection.
+ */
+public class StyleSupportGenerator {
+    /** The package into which classes are generated by default. */
+    public static final String DEFAULT_PACKAGE = 
+            "com.sun.stylesheet.swing.generated";
+    
+    private StyleSupportGenerator() { }
+    
+    private static void showUsage() {
+        System.out.println("Usage: java " + 
+                StyleSupportGenerator.class.getName() + " -out <dir> " + 
+                "[-package <name>] (<class> | @<class list file>)...");
+    }
+    
+    
+    public static void main(String[] arg) throws Exception {
+        String out = null;
+        String packageName = DEFAULT_PACKAGE;
+        List<Class> classes = new ArrayList<Class>();
+        
+        for (int i = 0; i < arg.length; i++) {
+            if (arg[i].equals("-out") || arg[i].equals("-package")) {
+                if (i + 1 == arg.length) {
+                    showUsage();
+                    return;
+                }
+                if (arg[i].equals("-out"))
+                    out = arg[++i];
+                else
+                    packageName = arg[++i];
+            }
+            else if (arg[i].startsWith("@")) {
+                BufferedReader in = new BufferedReader(
+                        new FileReader(arg[i].substring(1)));
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() > 0 && !line.startsWith("#"))
+                            classes.add(Class.forName(line));
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            else
+                classes.add(Class.forName(arg[i]));
+        }
+        
+        if (out == null || classes.size() == 0)
+            showUsage();
+        else
+            generate(classes, packageName, new File(out));
+    }
+    
+    
+    /**
+     * Generates <code>StyleSupport</code> classes for the specified classes, 
+     * along with the index resource which lists them.  Classes which cannot 
+     * be supported (for instance because they are not public, or their 
+     * registered <code>StyleSupport</code> is not a public 
+     * <code>BeanStyleSupport</code>) are skipped with a warning.
+     *
+     *@param classes the classes to generate support for
+     *@param packageName the package of the generated classes
+     *@param outputDir the directory below which source files and the index 
+     *      are written
+     *@throws IOException if an error occurs writing the files
+     *@throws IntrospectionException if a class cannot be introspected
+     */
+    public static void generate(List<Class> classes, String packageName, 
+            File outputDir) throws IOException, IntrospectionException {
+        File packageDir = new File(outputDir, 
+                packageName.replace('.', File.separatorChar));
+        packageDir.mkdirs();
+        Map<String, String> index = new TreeMap<String, String>();
+        Set<String> names = new HashSet<String>();
+        for (Class cls : classes) {
+            Class<? extends StyleSupport> support = 
+                    TypeManager.getStyleSupportClass(cls);
+            String problem = getProblem(cls, support);
+            if (problem != null) {
+                System.err.println("WARNING: skipping " + cls.getName() + 
+                        ": " + problem);
+                continue;
+            }
+            String className = cls.getCanonicalName().substring(
+                    cls.getPackage() != null ? 
+                        cls.getPackage().getName().length() + 1 : 0)
+                    .replace('.', '_') + "StyleSupport";
+            if (!names.add(className))
+                throw new IllegalArgumentException("duplicate class name " + 
+                        className + "; generate " + cls.getName() + 
+                        " into a different package");
+            Writer writer = new FileWriter(
+                    new File(packageDir, className + ".java"));
+            try {
+                writer.write(generateSource(cls, support, packageName, 
+                        className));
+            }
+            finally {
+                writer.close();
+            }
+            index.put(cls.getName(), packageName + "." + className);
+        }
+        
+        File indexFile = new File(outputDir, 
+                TypeManager.GENERATED_STYLE_SUPPORT_INDEX);
+        indexFile.getParentFile().mkdirs();
+        Writer writer = new FileWriter(indexFile);
+        try {
+            writer.write("# Generated by " + 
+                    StyleSupportGenerator.class.getName() + " -- do not edit\n");
+            for (Map.Entry<String, String> e : index.entrySet())
+                writer.write(e.getKey() + "=" + e.getValue() + "\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+    
+    
+    private static String getProblem(Class cls, 
+            Class<? extends StyleSupport> support) {
+        if (!isAccessible(cls))
+            return "not public";
+        if (support == null)
+            return "no registered StyleSupport";
+        if (!BeanStyleSupport.class.isAssignableFrom(support))
+            return support.getName() + " is not a BeanStyleSupport";
+        if (!isAccessible(support) || 
+                Modifier.isFinal(support.getModifiers()))
+            return support.getName() + " cannot be subclassed";
+        try {
+            Constructor c = support.getConstructor(Class.class);
+            if (!Modifier.isPublic(c.getModifiers()))
+                return support.getName() + " has no public Class constructor";
+        }
+        catch (NoSuchMethodException e) {
+            return support.getName() + " has no public Class constructor";
+        }
+        return null;
+    }
+    
+    
+    /** 
+     * Returns true if the type can be named in generated code in any 
+     * package.
+     */
+    private static boolean isAccessible(Class type) {
+        while (type.isArray())
+            type = type.getComponentType();
+        if (type.isPrimitive())
+            return true;
+        if (type.getCanonicalName() == null)
+            return false; // local or anonymous
+        for (Class c = type; c != null; c = c.getDeclaringClass()) {
+            if (!Modifier.isPublic(c.getModifiers()))
+                return false;
+        }
+        return true;
+    }
+    
+    
+    private static String literal(String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                result.append('\\').append(c);
+            else if (c < ' ' || c > '~')
+                result.append(String.format("\\u%04x", (int) c));
+            else
+                result.append(c);
+        }
+        return result.append('"').toString();
+    }
+    
+    
+    private static String literal(Class type) {
+        return type != null ? type.getCanonicalName() + ".class" : "null";
+    }
+    
+    
+    /** Returns an expression converting <code>value</code> to the type. */
+    private static String unwrap(Class type) {
+        if (type == boolean.class)
+            return "((Boolean) value).booleanValue()";
+        if (type == char.class)
+            return "((Character) value).charValue()";
+        if (type.isPrimitive()) {
+            String name = type.getName();
+            return "((Number) value)." + name + "Value()";
+        }
+        return "(" + type.getCanonicalName() + ") value";
+    }
+    
+    
+    /** 
+     * Returns true if the method declares checked exceptions, which the 
+     * generated call must catch.
+     */
+    private static boolean throwsChecked(Method method) {
+        for (Class type : method.getExceptionTypes()) {
+            if (!RuntimeException.class.isAssignableFrom(type) && 
+                    !Error.class.isAssignableFrom(type))
+                return true;
+        }
+        return false;
+    }
+    
+    
+    /** 
+     * Returns a switch case executing the statement, which calls the 
+     * method.  Checked exceptions are rethrown as 
+     * <code>StylesheetException</code>, as the reflective handler does.
+     */
+    private static String switchCase(int index, Method method, 
+            String statement) {
+        if (!throwsChecked(method))
+            return "            case " + index + ": " + statement + "\n";
+        return "            case " + index + ":\n" +
+                "                try {\n" +
+                "                    " + statement + "\n" +
+                "                }\n" +
+                "                catch (RuntimeException e) {\n" +
+                "                    throw e;\n" +
+                "                }\n" +
+                "                catch (Exception e) {\n" +
+                "                    throw new StylesheetException(e);\n" +
+                "                }\n";
+    }
+    
+    
+    /** Returns the enumeration values in source form, or null. */
+    private static String enumerationValues(PropertyDescriptor descriptor) {
+        Object values = descriptor.getValue("enumerationValues");
+        if (!(values instanceof Object[]))
+            return null;
+        Object[] array = (Object[]) values;
+        if (array.length == 0)
+            return "new Object[0]";
+        StringBuilder result = new StringBuilder("new Object[] {");
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0)
+                result.append(",");
+            result.append("\n                ");
+            Object value = array[i];
+            if (value instanceof String)
+                result.append(literal((String) value));
+            else if (value instanceof Integer)
+                result.append("Integer.valueOf(" + value + ")");
+            else
+                return null; // not representable, leave it out
+        }
+        return result.append(" }").toString();
+    }
+    
+    
+    /**
+     * Returns the source of a <code>StyleSupport</code> class for the 
+     * specified class.
+     *
+     *@param beanClass the class to generate support for
+     *@param support the support class to extend
+     *@param packageName the package of the generated class
+     *@param className the simple name of the generated class
+     *@return the generated class' source
+     *@throws IntrospectionException if the class cannot be introspected
+     */
+    static String generateSource(Class beanClass, 
+            Class<? extends StyleSupport> support, String packageName, 
+            String className) throws IntrospectionException {
+        PropertyDescriptor[] descriptors = 
+                Introspector.getBeanInfo(beanClass).getPropertyDescriptors();
+        String bean = beanClass.getCanonicalName();
+        StringBuilder fields = new StringBuilder();
+        StringBuilder reads = new StringBuilder();
+        StringBuilder writes = new StringBuilder();
+        for (int i = 0; i < descriptors.length; i++) {
+            PropertyDescriptor d = descriptors[i];
+            Method read = d.getReadMethod();
+            Method write = d.getWriteMethod();
+            Class type = d.getPropertyType();
+            boolean direct = type != null && 
+                    (read != null || write != null) &&
+                    (read == null || isAccessible(read.getReturnType())) &&
+                    (write == null || 
+                        isAccessible(write.getParameterTypes()[0]));
+            fields.append("        result[" + i + 
+                    "] = new GeneratedPropertyDescriptor(" + 
+                    literal(d.getName()) + ", cls,\n                " + 
+                    literal(type) + ", " + 
+                    (read != null ? literal(read.getName()) : "null") + 
+                    ", " + 
+                    (write != null ? literal(write.getName()) : "null") + 
+                    ", " + (direct ? "this" : "null") + ", " + i + ");\n");
+            if (d.isBound())
+                fields.append("        result[" + i + "].setBound(true);\n");
+            String enumeration = enumerationValues(d);
+            if (enumeration != null) {
+                fields.append("        result[" + i + 
+                        "].setValue(\"enumerationValues\", " + enumeration + 
+                        ");\n");
+            }
+            if (direct) {
+                if (read != null) {
+                    reads.append(switchCase(i, read, 
+                            "return bean." + read.getName() + "();"));
+                }
+                if (write != null) {
+                    writes.append(switchCase(i, write, 
+                            "bean." + write.getName() + "(" + 
+                            unwrap(write.getParameterTypes()[0]) + 
+                            "); return;"));
+                }
+            }
+        }
+        
+        return "/* Generated by " + StyleSupportGenerator.class.getName() + 
+                " -- do not edit. */\n" +
+                "\n" +
+                "package " + packageName + ";\n" +
+                "\n" +
+                "import java.beans.IntrospectionException;\n" +
+                "import java.beans.PropertyDescriptor;\n" +
+                "\n" +
+                "import com.sun.stylesheet.StylesheetException;\n" +
+                "import com.sun.stylesheet.UnsupportedPropertyException;\n" +
+                "import com.sun.stylesheet.styleable.GeneratedPropertyDescriptor;\n" +
+                "import com.sun.stylesheet.styleable.PropertyAccessor;\n" +
+                "\n" +
+                "/**\n" +
+                " * Precomputed <code>StyleSupport</code> for {@link " + bean + 
+                "}.\n" +
+                " */\n" +
+                "public class " + className + " extends " + 
+                support.getCanonicalName() + "\n" +
+                "        implements PropertyAccessor {\n" +
+                "    private PropertyDescriptor[] descriptors;\n" +
+                "\n" +
+                "    public " + className + "(Class cls) {\n" +
+                "        super(cls);\n" +
+                "    }\n" +
+                "\n" +
+                "\n" +
+                "    protected synchronized PropertyDescriptor[] " + 
+                "getPropertyDescriptors()\n" +
+                "            throws IntrospectionException {\n" +
+                "        if (descriptors == null)\n" +
+                "            descriptors = createPropertyDescriptors();\n" +
+                "        return descriptors;\n" +
+                "    }\n" +
+                "\n" +
+                "\n" +
+                "    private PropertyDescriptor[] createPropertyDescriptors()\n" +
+                "            throws IntrospectionException {\n" +
+                "        Class cls = " + bean + ".class;\n" +
+                "        PropertyDescriptor[] result = new PropertyDescriptor[" + 
+                descriptors.length + "];\n" +
+                fields +
+                "        return result;\n" +
+                "    }\n" +
+                "\n" +
+                "\n" +
+                "    public Object readProperty(Object object, int index) {\n" +
+                "        " + bean + " bean = (" + bean + ") object;\n" +
+                "        switch (index) {\n" +
+                reads +
+                "            default: throw new UnsupportedPropertyException(\n" +
+                "                    \"property \" + index + \" cannot be read\");\n" +
+                "        }\n" +
+                "    }\n" +
+                "\n" +
+                "\n" +
+                "    public void writeProperty(Object object, int index, " + 
+                "Object value) {\n" +
+                "        " + bean + " bean = (" + bean + ") object;\n" +
+                "        switch (index) {\n" +
+                writes +
+                "            default: throw new UnsupportedPropertyException(\n" +
+                "                    \"property \" + index + \" cannot be written\");\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n";
+    }
+}
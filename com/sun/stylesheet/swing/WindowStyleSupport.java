@@ -24,28 +24,18 @@
 /* Modified by Volker Härtel, 8 Dec 2011 */ package com.sun.stylesheet.swing;
 
 import java.awt.Window;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
-import java.awt.event.WindowListener;
-import java.util.HashMap;
-import java.util.Map;
 
-import com.sun.stylesheet.PseudoclassEvent;
-import com.sun.stylesheet.PseudoclassListener;
 import com.sun.stylesheet.Styleable;
-import com.sun.stylesheet.StylesheetException;
-import com.sun.stylesheet.styleable.DefaultStyleable;
 
 /**
- * Implements <code>Styleable</code> support for {@link Window Windows}.
+ * Implements <code>Styleable</code> support for {@link Window Windows}.  The 
+ * <code>active</code> and <code>inactive</code> pseudoclasses are handled 
+ * along with the other component pseudoclasses by 
+ * {@link ComponentStyleSupport}.
  *
  *@author Ethan Nicholas
  */
 public class WindowStyleSupport extends ComponentStyleSupport {
-    /** Maps PseudoclassListeners to their WindowListener adapters. */
-    private Map<PseudoclassListener, WindowListener> windowListeners;
-   
-   
     /**
      * Creates a new <code>WindowStyleSupport</code> for the specified class.
      *
@@ -60,71 +50,4 @@ public class WindowStyleSupport extends ComponentStyleSupport {
     public Styleable getStyleableParent(Object object) {
         return null;
     }
-    
-    
-    private synchronized WindowListener getWindowListener(
-            final PseudoclassListener listener, 
-            final PseudoclassEvent event, 
-            final boolean inverse) {
-        if (windowListeners == null)
-            windowListeners = 
-                    new HashMap<PseudoclassListener, WindowListener>();
-        WindowListener result = windowListeners.get(listener);
-        if (result == null) {
-            result = new WindowAdapter() {
-                @Override
-                public void windowActivated(WindowEvent e) {
-                    if (inverse)
-                        listener.pseudoclassRemoved(event);
-                    else
-                        listener.pseudoclassAdded(event);
-                }
-    
-    
-                @Override
-                public void windowDeactivated(WindowEvent e) {
-                    if (inverse)
-                        listener.pseudoclassAdded(event);
-                    else
-                        listener.pseudoclassRemoved(event);
-                }
-            };
-            windowListeners.put(listener, result);
-        }
-        return result;
-    }
-
-
-    @Override
-    public void addPseudoclassListener(DefaultStyleable styleable, 
-            String pseudoclass, 
-            final PseudoclassListener listener) throws StylesheetException {
-        final PseudoclassEvent event = new PseudoclassEvent(styleable, 
-                pseudoclass);
-        Window window = (Window) styleable.getBaseObject();
-        if (pseudoclass.equals("active") || pseudoclass.equals("inactive")) {
-            boolean inverse = pseudoclass.equals("inactive");
-            if (window.isActive() != inverse)
-                listener.pseudoclassAdded(event);
-            window.addWindowListener(getWindowListener(listener, event, 
-                    inverse));
-        }
-        else
-            super.addPseudoclassListener(styleable, pseudoclass, listener);
-    }
-    
-    
-    @Override
-    public void removePseudoclassListener(DefaultStyleable styleable, 
-            String pseudoclass, 
-            final PseudoclassListener listener) throws StylesheetException {
-        Window window = (Window) styleable.getBaseObject();
-        if (pseudoclass.equals("active") || pseudoclass.equals("inactive")) {
-            boolean inverse = pseudoclass.equals("inactive");
-            window.removeWindowListener(getWindowListener(listener, null, 
-                    inverse));
-        }
-        else
-            super.removePseudoclassListener(styleable, pseudoclass, listener);
-    }
 }
\ No newline at end of file
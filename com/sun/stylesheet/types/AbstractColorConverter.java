@@ -45,7 +45,8 @@ import com.sun.stylesheet.StylesheetException;
  *
  *@author Ethan Nicholas
  */
-public abstract class AbstractColorConverter implements TypeConverter {
+public abstract class AbstractColorConverter implements TypeConverter, 
+        ContextFreeConverter {
     public Object convertFromString(String string) {
         if (string.equals("null"))
             return null;
@@ -24,12 +24,10 @@
 /* Modified by Volker Härtel, 8 Dec 2011 */ package com.sun.stylesheet.types;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
 
 /** 
- * A Map implementation which uses Classes as keys.  <code>ClassMap</code> 
+ * A Map-like registry which uses Classes as keys.  <code>ClassMap</code> 
  * differs from typical maps in that it takes subclasses into account;  mapping 
  * a class to a value also maps all subclasses of that class to the value.
  * <p>
@@ -38,61 +36,77 @@ import java.util.Set;
  * mapping.  If no mapping exists for the object or any of its superclasses, its
  * interfaces will checked next in declaration order.  The first mapping found 
  * will be returned.
+ * <p>
+ * <code>ClassMap</code> is safe for use by multiple threads.  Lookups are 
+ * lock-free and, once a class has been looked up, do not allocate;  
+ * modifications copy the mappings and are expected to be rare.
  *
  *@author Ethan Nicholas
  */
-class ClassMap<T> extends HashMap<Class, T> {
+class ClassMap<T> {
+    /** Stands in for <code>null</code>, which ClassValue cannot hold. */
+    private static final Object NONE = new Object();
+    
+    /** The explicit mappings.  Never modified once published. */
+    private volatile Map<Class, T> mappings = new HashMap<Class, T>();
+    
     /** 
-     * Keeps track of automatically-added Classes so we can distinguish them 
-     * from user-added Classes.  Unknown Classes are automatically added to the 
-     * map during <code>get</code> calls to speed up subsequent requests, but 
-     * they must be updated when the mappings for their superclasses are 
-     * modified.
+     * Caches the result of resolving each class against the current 
+     * mappings.  Replaced whenever the mappings change, which discards every 
+     * cached result at once.
      */
-    private Set<Class> autoKeys = new HashSet<Class>();
+    private volatile ClassValue<Object> lookups = createLookups();
 
 
-    /** 
-     * Returns the value associated with the key <code>Class</code>.  If the
-     * class itself does not have a mapping, its superclass will be checked, and 
-     * so on until an ancestor class with a mapping is located.  If none of the 
-     * class' ancestors have a mapping, <code>null</code> is returned.
-     *
-     *@param key the class to check
-     *@return the mapping for the class
-     */
-    public T get(Class key) {
+    private ClassValue<Object> createLookups() {
+        return new ClassValue<Object>() {
+            protected Object computeValue(Class<?> type) {
+                T result = resolve(mappings, type);
+                return result != null ? result : NONE;
+            }
+        };
+    }
+    
+    
+    private static <T> T resolve(Map<Class, T> mappings, Class key) {
         T result = null;
         Class cls = key;
         while (cls != null) {
-            result = super.get(cls);
+            result = mappings.get(cls);
             if (result != null)
-                break;
+                return result;
             cls = cls.getSuperclass();
         }
 
-        if (result == null && key.isInterface()) {
-            cls = Object.class;
-            result = super.get(cls);
+        if (key.isInterface()) {
+            result = mappings.get(Object.class);
+            if (result != null)
+                return result;
         }
         
-        if (result == null) {
-            Class[] interfaces = key.getInterfaces();
-            for (int i = 0; i < interfaces.length; i++) {
-                cls = interfaces[i];
-                result = get(cls);
-                if (result != null)
-                    break;
-            }
-        }            
-        
-        if (cls != key && result != null) { 
-            // no mapping for the class itself, but found one for a superclass
-            // or interface
-            put(key, result);
-            autoKeys.add(key);
+        Class[] interfaces = key.getInterfaces();
+        for (int i = 0; i < interfaces.length; i++) {
+            result = resolve(mappings, interfaces[i]);
+            if (result != null)
+                return result;
         }
-        return result;
+        return null;
+    }
+
+
+    /** 
+     * Returns the value associated with the key <code>Class</code>.  If the
+     * class itself does not have a mapping, its superclass will be checked, and 
+     * so on until an ancestor class with a mapping is located.  If none of the 
+     * class' ancestors have a mapping, <code>null</code> is returned.
+     *
+     *@param key the class to check
+     *@return the mapping for the class
+     */
+    @SuppressWarnings("unchecked")
+    public T get(Class key) {
+        Object result = lookups.get(key);
+        return result != NONE ? (T) result : null;
     }
     
     
@@ -102,10 +116,10 @@ class ClassMap<T> extends HashMap<Class, T> {
       *@param value the value to map to the class
       *@return the old value associated with the class
       */
-    public T put(Class key, T value) {
-        // remove automatic keys which descend from the class being modified
-        T result = remove(key);
-        super.put(key, value);
+    public synchronized T put(Class key, T value) {
+        Map<Class, T> copy = new HashMap<Class, T>(mappings);
+        T result = copy.put(key, value);
+        publish(copy);
         return result;
     }
     
@@ -116,22 +130,20 @@ class ClassMap<T> extends HashMap<Class, T> {
      *@param key the class to remove
      *@return the old value associated with the class
      */
-    public T remove(Class key) {
-        T result = super.remove(key);
-        if (autoKeys.size() > 0) { 
-            // remove all automatic keys which descend from the class being 
-            // removed
-            Class cls = key;
-            Iterator<Class> i = autoKeys.iterator();
-            while (i.hasNext()) {
-                Class auto = i.next();
-                if (cls.isAssignableFrom(auto)) {
-                    i.remove();
-                    remove(auto);
-                
-                }
-            }
-        }
+    public synchronized T remove(Class key) {
+        if (!mappings.containsKey(key))
+            return null;
+        Map<Class, T> copy = new HashMap<Class, T>(mappings);
+        T result = copy.remove(key);
+        publish(copy);
         return result;
     }
-}
\ No newline at end of file
+    
+    
+    private void publish(Map<Class, T> copy) {
+        // the mappings must be visible before the new lookups are, so that 
+        // no result computed from the old mappings can be cached in them
+        mappings = copy;
+        lookups = createLookups();
+    }
+}
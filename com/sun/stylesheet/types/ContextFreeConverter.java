@@ -0,0 +1,39 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.types;
+
+/**
+ * Marks a {@link TypeConverter} whose results depend only on the string being 
+ * converted, and are never modified once created.  Such values are converted 
+ * once per declaration and shared by every object the declaration is applied 
+ * to, rather than being converted again for each one.
+ * <p>
+ * Converters whose results depend on the object being styled must not 
+ * implement this interface.  Relative {@link Size Sizes} are still resolved 
+ * against each object after conversion, so <code>SizeConverter</code> 
+ * qualifies.
+ */
+public interface ContextFreeConverter {
+}
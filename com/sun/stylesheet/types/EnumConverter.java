@@ -30,7 +30,7 @@ import com.sun.stylesheet.StylesheetException;
  *
  *@author Ethan Nicholas
  */
-public class EnumConverter implements TypeConverter {
+public class EnumConverter implements TypeConverter, ContextFreeConverter {
     private Class enumClass;
     
     public EnumConverter(Class enumClass) {
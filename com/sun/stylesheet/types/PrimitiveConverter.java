@@ -52,7 +52,8 @@ import com.sun.stylesheet.StylesheetException;
  *
  *@author Ethan Nicholas
  */
-public class PrimitiveConverter implements TypeConverter<Object> {
+public class PrimitiveConverter implements TypeConverter<Object>, 
+        ContextFreeConverter {
     private Class type;
     
     
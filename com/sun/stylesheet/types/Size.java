@@ -25,6 +25,7 @@
 
 import java.awt.Toolkit;
 
+import com.sun.stylesheet.PropertyManager;
 import com.sun.stylesheet.Styleable;
 
 /**
@@ -60,8 +61,10 @@ public class Size {
     
     
     private float getFontSize(Styleable object) {
-        return ((Size) object.getProperty("font-size")).getSize(object, 
-                Unit.PT);
+        // the font may have been inherited in a batch which has not yet been 
+        // written to the object
+        return ((Size) PropertyManager.getProperty(object, "fontSize")).
+                getSize(object, Unit.PT);
     }
     
     
@@ -32,7 +32,8 @@ import com.sun.stylesheet.StylesheetException;
  * Converts strings representing CSS sizes (e.g. "12pt" or "0.2em") to 
  * {@link Size Sizes}.
  */
-public class SizeConverter implements TypeConverter<Size> {
+public class SizeConverter implements TypeConverter<Size>, 
+        ContextFreeConverter {
     Pattern pattern = Pattern.compile("(\\d*(?:\\.\\d*)?)(%|in|cm|mm|" + 
             "pt|px|pc|em|ex)");
     
@@ -31,7 +31,8 @@ import com.sun.stylesheet.StylesheetException;
  * by either single (') or double (") quotes and may contain valid Java string
  * escape sequences such as \n.
  */
-public class StringConverter implements TypeConverter<String> {
+public class StringConverter implements TypeConverter<String>, 
+        ContextFreeConverter {
     public String convertFromString(String string) {
         String trimmed = string.trim();
         if (trimmed.equals("null"))
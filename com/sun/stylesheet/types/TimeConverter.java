@@ -32,7 +32,8 @@ import com.sun.stylesheet.StylesheetException;
  * Converts strings representing times (e.g. "500ms" or "0.5s") to 
  * {@link Time Times}.
  */
-public class TimeConverter implements TypeConverter<Time> {
+public class TimeConverter implements TypeConverter<Time>, 
+        ContextFreeConverter {
     Pattern pattern = Pattern.compile("(\\d*(?:\\.\\d*)?)(ms|s|m)");
     
     public Time convertFromString(String string) {
@@ -30,19 +30,27 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Insets;
 import java.awt.Window;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.WeakHashMap;
 
 import javax.swing.AbstractButton;
+import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.KeyStroke;
 import javax.swing.border.Border;
@@ -52,6 +60,7 @@ import com.sun.stylesheet.StylesheetException;
 import com.sun.stylesheet.styleable.DefaultStyleable;
 import com.sun.stylesheet.styleable.StyleSupport;
 import com.sun.stylesheet.swing.AbstractButtonStyleSupport;
+import com.sun.stylesheet.swing.BeanStyleSupport;
 import com.sun.stylesheet.swing.BorderConverter;
 import com.sun.stylesheet.swing.ComponentStyleSupport;
 import com.sun.stylesheet.swing.DimensionConverter;
@@ -76,15 +85,46 @@ public class TypeManager {
 	private static boolean initialized;
 
 	// stores styleable wrappers so we can guarantee that the same wrapper is
-	// always used for the same object
-	public static Map<Object, WeakReference<Styleable>> styleables = new WeakHashMap<Object, WeakReference<Styleable>>();
+	// always used for the same object. JComponents hold their wrapper in a
+	// client property, which keeps it alive exactly as long as the component.
+	// Other objects are looked up by identity; their wrappers refer back to
+	// them, so the table can only hold the wrappers weakly. Other Components
+	// (windows and AWT containers) are kept alive by a listener the
+	// component owns, as they notify their wrappers of changes.
+	private static final Object STYLEABLE_KEY = new Object() {
+		public String toString() {
+			return "com.sun.stylesheet.styleable";
+		}
+	};
+
+	/**
+	 * Registered on a Component for a property which is never fired, solely so
+	 * that the component holds on to its wrapper.
+	 */
+	private static class StyleableHolder implements PropertyChangeListener {
+		private final Styleable styleable;
+
+		StyleableHolder(Styleable styleable) {
+			this.styleable = styleable;
+		}
+
+		public void propertyChange(PropertyChangeEvent e) {
+		}
+	}
+
+	private static WeakIdentityTable<WeakReference<Styleable>> styleables = new WeakIdentityTable<WeakReference<Styleable>>();
 
 	// *** IMPORTANT ***
 	// Note that the converters and styleSupport maps are ClassMaps, which means
 	// they automatically handle subclasses of the keys inserted into them.
+	// ClassMaps and the caches below may be read from any thread without
+	// locking; registration copies the affected map. The per-class caches are
+	// ClassValues, so they do not keep the classes (or their loaders) alive.
 	private static ClassMap<Object> converters = new ClassMap<Object>();
 
-	private static Map<Class, TypeConverter> cachedConverters = new HashMap<Class, TypeConverter>();
+	// instances of converter classes, per type; replaced whenever a converter
+	// is registered
+	private static volatile ClassValue<TypeConverter> cachedConverters = createCachedConverters();
 
 	private static ClassMap<Interpolator> interpolators = new ClassMap<Interpolator>();
 
@@ -92,11 +132,58 @@ public class TypeManager {
 
 	private static ClassMap<Class<? extends StyleSupport>> styleSupportClasses = new ClassMap<Class<? extends StyleSupport>>();
 
-	private static Map<Class, StyleSupport> styleSupportInstances = new HashMap<Class, StyleSupport>();
+	private static final ClassValue<StyleSupport> styleSupportInstances = new ClassValue<StyleSupport>() {
+		protected StyleSupport computeValue(Class<?> cls) {
+			return createStyleSupport(cls);
+		}
+	};
+
+	/**
+	 * The classpath resource listing generated <code>StyleSupport</code>
+	 * classes, as written by
+	 * {@link com.sun.stylesheet.swing.StyleSupportGenerator}. Each entry maps
+	 * the name of a supported class to the name of its generated support
+	 * class.
+	 */
+	public static final String GENERATED_STYLE_SUPPORT_INDEX = "META-INF/css-style-support.properties";
+
+	// maps class names to generated StyleSupport class names, by the loader
+	// whose resources list them;  loaded on demand
+	private static final Map<ClassLoader, Properties> generatedStyleSupport = Collections
+			.synchronizedMap(new WeakHashMap<ClassLoader, Properties>());
 
-	private static Map<Class, Constructor> objectConstructors = new HashMap<Class, Constructor>();
+	private static final ConstructorCache objectConstructors = new ConstructorCache(Object.class);
 
-	private static Map<Class, Constructor> classConstructors = new HashMap<Class, Constructor>();
+	private static final ConstructorCache classConstructors = new ConstructorCache(Class.class);
+
+	/**
+	 * Caches the public constructor of each class which takes a single
+	 * parameter of a given type. Classes without one map to the
+	 * <code>NoSuchMethodException</code> raised when looking it up, as a
+	 * ClassValue cannot hold <code>null</code>.
+	 */
+	private static class ConstructorCache extends ClassValue<Object> {
+		private final Class<?> parameterType;
+
+		ConstructorCache(Class<?> parameterType) {
+			this.parameterType = parameterType;
+		}
+
+		protected Object computeValue(Class<?> cls) {
+			try {
+				return cls.getConstructor(parameterType);
+			} catch (NoSuchMethodException e) {
+				return e;
+			}
+		}
+
+		Constructor<?> getConstructor(Class<?> cls) throws NoSuchMethodException {
+			Object result = get(cls);
+			if (result instanceof NoSuchMethodException)
+				throw new NoSuchMethodException(((NoSuchMethodException) result).getMessage());
+			return (Constructor<?>) result;
+		}
+	}
 
 	private TypeManager() { /* not instantiable */
 	}
@@ -188,6 +275,14 @@ public class TypeManager {
 	 * <code>StyleSupport</code> classes. This call does not replace any
 	 * <code>StyleSupport</code> instances which may already have been created.
 	 * <p>
+	 * If a class generated by
+	 * {@link com.sun.stylesheet.swing.StyleSupportGenerator} is listed for a
+	 * specific class in a {@link #GENERATED_STYLE_SUPPORT_INDEX} resource, and
+	 * extends the support class registered for it, the generated class is
+	 * used in preference so that no introspection is needed. The index and
+	 * the generated class are looked up through the class' own loader, then
+	 * the thread's context class loader, then the loader of this library.
+	 * <p>
 	 * This call requires the <code>setGlobalStylesheet</code> AWTPermission.
 	 * 
 	 * @param cls
@@ -276,25 +371,33 @@ public class TypeManager {
 		if (object instanceof Styleable)
 			return (Styleable) object;
 		else {
-			WeakReference<Styleable> result = styleables.get(object);
-			if (result == null) {
-				Class<? extends Styleable> wrapper = null;
-				wrapper = wrappers.get(object.getClass());
-				if (wrapper == null) {
-					Class[] interfaces = object.getClass().getInterfaces();
-					for (int i = 0; i < interfaces.length; i++) {
-						wrapper = wrappers.get(interfaces[i]);
-						if (wrapper != null)
-							break;
-					}
+			Styleable result = getExistingStyleable(object);
+			if (result != null)
+				return result;
+			Class<? extends Styleable> wrapper = wrappers.get(object.getClass());
+			if (wrapper == null) {
+				Class[] interfaces = object.getClass().getInterfaces();
+				for (int i = 0; i < interfaces.length; i++) {
+					wrapper = wrappers.get(interfaces[i]);
+					if (wrapper != null)
+						break;
 				}
-				if (wrapper == null)
-					throw new StylesheetException("no registered Styleable wrapper " + "for " + object.getClass());
+			}
+			if (wrapper == null)
+				throw new StylesheetException("no registered Styleable wrapper " + "for " + object.getClass());
+			// the wrapper is constructed under the lock: its constructor
+			// registers listeners on the object, which a discarded duplicate
+			// would leave behind. The lock is reentrant, so the constructor
+			// may still call back into TypeManager.
+			synchronized (STYLEABLE_KEY) {
+				// another thread may have wrapped the object in the meantime
+				result = getExistingStyleable(object);
+				if (result != null)
+					return result;
 				try {
-					Constructor c = getObjectConstructor(wrapper);
-					result = new WeakReference<Styleable>((Styleable) c.newInstance(object));
+					Constructor c = objectConstructors.getConstructor(wrapper);
+					result = (Styleable) c.newInstance(object);
 					// System.out.println("create new stylable "+result);
-					styleables.put(object, result);
 				} catch (NoSuchMethodException e) {
 					throw new StylesheetException("Styleable wrapper " + wrapper
 							+ " does not have a public constructor which takes " + "Object");
@@ -305,11 +408,43 @@ public class TypeManager {
 				} catch (InvocationTargetException e) {
 					throw new StylesheetException(e);
 				}
+				if (object instanceof JComponent)
+					((JComponent) object).putClientProperty(STYLEABLE_KEY, result);
+				else {
+					if (object instanceof Component)
+						((Component) object).addPropertyChangeListener(STYLEABLE_KEY.toString(),
+								new StyleableHolder(result));
+					styleables.put(object, new WeakReference<Styleable>(result));
+				}
+				return result;
 			}
-			return result.get();
 		}
 	}
 
+	/**
+	 * Returns the <code>Styleable</code> for the specified object if it
+	 * implements <code>Styleable</code> or already has a wrapper, without
+	 * creating one.
+	 * <p>
+	 * Wrappers used to be kept in the public <code>styleables</code> map,
+	 * which has been removed: JComponents now hold their own wrappers. Code
+	 * which looked up wrappers in that map should call this method instead.
+	 * 
+	 * @param object
+	 *            the object whose wrapper is needed
+	 * @return the object's <code>Styleable</code>, or <code>null</code> if it
+	 *         has not been wrapped
+	 * @see #getStyleable
+	 */
+	public static Styleable getExistingStyleable(Object object) {
+		if (object instanceof Styleable)
+			return (Styleable) object;
+		if (object instanceof JComponent)
+			return (Styleable) ((JComponent) object).getClientProperty(STYLEABLE_KEY);
+		WeakReference<Styleable> result = styleables.get(object);
+		return result != null ? result.get() : null;
+	}
+
 	/**
 	 * Returns the <code>StyleSupport</code> instance which
 	 * {@link DefaultStyleable} should use for the specified object. Additional
@@ -324,56 +459,161 @@ public class TypeManager {
 	 * @see #registerStyleSupport
 	 */
 	public static StyleSupport getStyleSupport(Object object) throws StylesheetException {
-		Class cls = object.getClass();
-		StyleSupport result = styleSupportInstances.get(cls);
+		return getStyleSupportForClass(object.getClass());
+	}
+
+	private static StyleSupport getStyleSupportForClass(Class cls)
+			throws StylesheetException {
+		return styleSupportInstances.get(cls);
+	}
+
+	// racing threads may both create an instance, but the ClassValue hands
+	// every caller the same one
+	private static StyleSupport createStyleSupport(Class cls)
+			throws StylesheetException {
+		Class<? extends StyleSupport> styleSupportClass = getStyleSupportClass(cls);
+		if (styleSupportClass == null)
+			throw new StylesheetException("no registered StyleSupport for " + cls);
+		styleSupportClass = getGeneratedStyleSupportClass(cls, styleSupportClass);
+		try {
+			Constructor c = classConstructors.getConstructor(styleSupportClass);
+			return (StyleSupport) c.newInstance(cls);
+		} catch (NoSuchMethodException e) {
+			throw new StylesheetException("Style support " + styleSupportClass
+					+ " does not have a public constructor which takes " + "Class");
+		} catch (InstantiationException e) {
+			throw new StylesheetException(e);
+		} catch (IllegalAccessException e) {
+			throw new StylesheetException(e);
+		} catch (InvocationTargetException e) {
+			throw new StylesheetException(e);
+		}
+	}
+
+	/**
+	 * Returns the <code>StyleSupport</code> class registered for the specified
+	 * class, taking superclasses and interfaces into account.
+	 * 
+	 * @param cls
+	 *            the class which needs support
+	 * @return the registered <code>StyleSupport</code> class, or
+	 *         <code>null</code> if there is none
+	 * @see #registerStyleSupport
+	 */
+	public static Class<? extends StyleSupport> getStyleSupportClass(Class cls) {
+		Class<? extends StyleSupport> result = styleSupportClasses.get(cls);
 		if (result == null) {
-			Class<? extends StyleSupport> styleSupportClass = styleSupportClasses.get(cls);
-			if (styleSupportClass == null) {
-				Class[] interfaces = object.getClass().getInterfaces();
-				for (int i = 0; i < interfaces.length; i++) {
-					styleSupportClass = styleSupportClasses.get(interfaces[i]);
-					if (styleSupportClass != null)
-						break;
-				}
+			Class[] interfaces = cls.getInterfaces();
+			for (int i = 0; i < interfaces.length; i++) {
+				result = styleSupportClasses.get(interfaces[i]);
+				if (result != null)
+					break;
 			}
-			if (styleSupportClass == null)
-				throw new StylesheetException("no registered StyleSupport for " + cls);
-			try {
-				Constructor c = getClassConstructor(styleSupportClass);
-				result = (StyleSupport) c.newInstance(cls);
-				styleSupportInstances.put(object.getClass(), result);
-			} catch (NoSuchMethodException e) {
-				throw new StylesheetException("Style support " + styleSupportClass
-						+ " does not have a public constructor which takes " + "Class");
-			} catch (InstantiationException e) {
-				throw new StylesheetException(e);
-			} catch (IllegalAccessException e) {
-				throw new StylesheetException(e);
-			} catch (InvocationTargetException e) {
-				throw new StylesheetException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the generated support class for exactly the specified class if
+	 * there is one which extends the registered support class, otherwise the
+	 * registered support class.
+	 */
+	private static Class<? extends StyleSupport> getGeneratedStyleSupportClass(Class cls,
+			Class<? extends StyleSupport> registered) {
+		for (ClassLoader loader : getGeneratedStyleSupportLoaders(cls)) {
+			String name = getGeneratedStyleSupportIndex(loader).getProperty(cls.getName());
+			if (name != null) {
+				try {
+					Class<?> generated = Class.forName(name, true, loader);
+					if (registered.isAssignableFrom(generated))
+						return generated.asSubclass(registered);
+				} catch (ClassNotFoundException e) {
+					// stale index, try the next loader
+				} catch (LinkageError e) {
+					// generated against a different version of the class
+				}
 			}
 		}
+		return registered;
+	}
+
+	/**
+	 * Returns the loaders which may see a generated support class for the
+	 * specified class: its own loader, the thread's context class loader and
+	 * the loader of this library, in that order and without duplicates. The
+	 * bootstrap loader is replaced by the system class loader, since classes
+	 * such as <code>JButton</code> are generated onto the application's
+	 * classpath.
+	 */
+	private static List<ClassLoader> getGeneratedStyleSupportLoaders(Class cls) {
+		ClassLoader[] candidates = { cls.getClassLoader(),
+				Thread.currentThread().getContextClassLoader(), TypeManager.class.getClassLoader() };
+		List<ClassLoader> result = new ArrayList<ClassLoader>(candidates.length);
+		for (ClassLoader loader : candidates) {
+			if (loader == null)
+				loader = ClassLoader.getSystemClassLoader();
+			if (!result.contains(loader))
+				result.add(loader);
+		}
 		return result;
 	}
 
-	private static Constructor getObjectConstructor(Class cls) throws NoSuchMethodException {
-		Constructor result = objectConstructors.get(cls);
+	private static Properties getGeneratedStyleSupportIndex(ClassLoader loader) {
+		Properties result = generatedStyleSupport.get(loader);
 		if (result == null) {
-			result = cls.getConstructor(Object.class);
-			objectConstructors.put(cls, result);
+			result = loadGeneratedStyleSupportIndex(loader);
+			generatedStyleSupport.put(loader, result);
 		}
 		return result;
 	}
 
-	private static Constructor getClassConstructor(Class cls) throws NoSuchMethodException {
-		Constructor result = classConstructors.get(cls);
-		if (result == null) {
-			result = cls.getConstructor(Class.class);
-			classConstructors.put(cls, result);
+	private static Properties loadGeneratedStyleSupportIndex(ClassLoader loader) {
+		Properties result = new Properties();
+		try {
+			Enumeration<URL> indices = loader.getResources(GENERATED_STYLE_SUPPORT_INDEX);
+			while (indices.hasMoreElements()) {
+				InputStream in = indices.nextElement().openStream();
+				try {
+					result.load(in);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			// generated classes are only an optimization, carry on without
 		}
 		return result;
 	}
 
+	/**
+	 * Performs the lazy initialization needed to style instances of the
+	 * specified classes ahead of time, so that it does not have to happen on
+	 * the event dispatch thread while the first window is being styled. For
+	 * each class the <code>StyleSupport</code> is created and, for
+	 * {@link BeanStyleSupport BeanStyleSupports}, initialized, and the
+	 * converters and interpolators for its property types are resolved.
+	 * <p>
+	 * This method may be called from any thread, for instance from a
+	 * background thread while a splash screen is showing. Classes which
+	 * cannot be supported are skipped.
+	 * 
+	 * @param classes
+	 *            the classes which are going to be styled
+	 */
+	public static void prewarm(Collection<Class<?>> classes) {
+		for (Class<?> cls : classes) {
+			try {
+				StyleSupport support = getStyleSupportForClass(cls);
+				if (support instanceof BeanStyleSupport)
+					((BeanStyleSupport) support).prewarm();
+			} catch (StylesheetException e) {
+				// will be reported when an instance is actually styled
+			} catch (RuntimeException e) {
+				// likewise
+			}
+		}
+	}
+
 	private static void registerPrimitiveConverter(Class type) {
 		registerTypeConverter(type, new PrimitiveConverter(type));
 	}
@@ -398,6 +638,7 @@ public class TypeManager {
 	public static void registerTypeConverter(Class type, TypeConverter converter) {
 		checkPermission();
 		converters.put(type, converter);
+		cachedConverters = createCachedConverters();
 	}
 
 	/**
@@ -421,6 +662,7 @@ public class TypeManager {
 	public static void registerTypeConverterClass(Class type, Class<? extends TypeConverter> converter) {
 		checkPermission();
 		converters.put(type, converter);
+		cachedConverters = createCachedConverters();
 	}
 
 	/**
@@ -435,20 +677,26 @@ public class TypeManager {
 	 * @see #registerTypeConverter
 	 */
 	public static TypeConverter getTypeConverter(Class type) {
-		Object result = cachedConverters.get(type);
-		if (result == null) {
-			result = converters.get(type);
-			if (result instanceof Class) {
+		Object result = converters.get(type);
+		if (result instanceof Class)
+			result = cachedConverters.get(type);
+		return (TypeConverter) result;
+	}
+
+	private static ClassValue<TypeConverter> createCachedConverters() {
+		return new ClassValue<TypeConverter>() {
+			protected TypeConverter computeValue(Class<?> type) {
+				Object result = converters.get(type);
+				if (!(result instanceof Class))
+					throw new StylesheetException("converter for " + type + " was replaced");
 				try {
-					Constructor c = ((Class) result).getConstructor(Class.class);
-					result = c.newInstance(type);
-					cachedConverters.put(type, (TypeConverter) result);
+					Constructor c = classConstructors.getConstructor((Class) result);
+					return (TypeConverter) c.newInstance(type);
 				} catch (Exception e) {
 					throw new StylesheetException(e);
 				}
 			}
-		}
-		return (TypeConverter) result;
+		};
 	}
 
 	/**
@@ -473,6 +721,19 @@ public class TypeManager {
 		return converter.convertFromString(string);
 	}
 
+	/**
+	 * Returns <code>true</code> if strings converted into the specified type
+	 * produce the same value regardless of the object being styled, so that
+	 * converted values may be cached and shared.
+	 * 
+	 * @param type
+	 *            the type into which strings are converted
+	 * @return true if the type's converter is a {@link ContextFreeConverter}
+	 */
+	public static boolean isContextFree(Class type) {
+		return getTypeConverter(type) instanceof ContextFreeConverter;
+	}
+
 	/**
 	 * Registers a new <code>Interpolator</code>, which is used to interpolate
 	 * values during animated transitions. The <code>Interpolator</code> will be
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.types;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A hash table which compares its keys by identity and holds them weakly, so
+ * that an entry disappears once its key has been collected.  Unlike 
+ * <code>WeakHashMap</code> it never calls the keys' <code>hashCode</code> or 
+ * <code>equals</code> methods.
+ * <p>
+ * Values are held strongly, so a value must not refer to its own key or the 
+ * entry will never be collected.
+ * <p>
+ * Lookups are lock-free.  Modifications are synchronized, and are also where 
+ * entries whose keys have been collected get removed.  The table grows by 
+ * copying, so a lookup running concurrently with a modification sees either 
+ * the old or the new chains, never half-moved ones.
+ */
+class WeakIdentityTable<V> {
+    private static class Entry<V> extends WeakReference<Object> {
+        final int hash;
+        volatile V value;
+        volatile Entry<V> next;
+        
+        Entry(Object key, int hash, V value, Entry<V> next, 
+                ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+    
+    
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private volatile Entry<V>[] table = newTable(64);
+    private int size;
+    
+    
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] newTable(int length) {
+        return new Entry[length];
+    }
+    
+    
+    private static int indexFor(int hash, int length) {
+        return (hash ^ (hash >>> 16)) & (length - 1);
+    }
+    
+    
+    /**
+     * Returns the value associated with the specified object.
+     *
+     *@param key the object to look up
+     *@return the associated value, or <code>null</code> if there is none
+     */
+    public V get(Object key) {
+        int hash = System.identityHashCode(key);
+        Entry<V>[] table = this.table;
+        for (Entry<V> e = table[indexFor(hash, table.length)]; e != null; 
+                e = e.next) {
+            if (e.hash == hash && e.get() == key)
+                return e.value;
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Associates a value with the specified object, replacing any existing 
+     * value.
+     *
+     *@param key the object
+     *@param value the value to associate with it
+     */
+    public synchronized void put(Object key, V value) {
+        expunge();
+        int hash = System.identityHashCode(key);
+        int index = indexFor(hash, table.length);
+        for (Entry<V> e = table[index]; e != null; e = e.next) {
+            if (e.hash == hash && e.get() == key) {
+                e.value = value;
+                return;
+            }
+        }
+        table[index] = new Entry<V>(key, hash, value, table[index], queue);
+        if (++size > table.length * 3 / 4)
+            resize();
+        else
+            table = table; // volatile write publishes the new entry
+    }
+    
+    
+    /** 
+     * Doubles the table, copying the entries so that concurrent lookups can 
+     * still walk the old chains.  The old entries are left registered with 
+     * the queue;  once expunged they are simply not found.
+     */
+    private void resize() {
+        Entry<V>[] newTable = newTable(table.length * 2);
+        int count = 0;
+        for (Entry<V> e : table) {
+            for (; e != null; e = e.next) {
+                Object key = e.get();
+                if (key == null)
+                    continue;
+                int index = indexFor(e.hash, newTable.length);
+                newTable[index] = new Entry<V>(key, e.hash, e.value, 
+                        newTable[index], queue);
+                count++;
+            }
+        }
+        size = count;
+        table = newTable;
+    }
+    
+    
+    /** Removes entries whose keys have been collected. */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        Entry<V> dead;
+        while ((dead = (Entry<V>) queue.poll()) != null) {
+            int index = indexFor(dead.hash, table.length);
+            Entry<V> prev = null;
+            for (Entry<V> e = table[index]; e != null; e = e.next) {
+                if (e == dead) {
+                    if (prev == null)
+                        table[index] = e.next;
+                    else
+                        prev.next = e.next;
+                    dead.value = null;
+                    size--;
+                    break;
+                }
+                prev = e;
+            }
+        }
+    }
+}
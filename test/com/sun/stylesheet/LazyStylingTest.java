@@ -0,0 +1,177 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.awt.Component;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.sun.stylesheet.css.parser.CSSParser;
+
+/**
+ * Checks that a {@link Stylesheet#setLazy lazy} stylesheet puts off styling 
+ * hidden components and their descendents until they are first shown, and 
+ * that a component shown in a container which has no <code>Styleable</code> 
+ * wrapper goes on waiting until it is shown in one which has.
+ * <p>
+ * Components only report themselves as showing while they are in a 
+ * displayed window, so the components here pretend to be showing and post 
+ * the hierarchy events themselves, which lets the checks run headless.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class LazyStylingTest {
+    private static int failures;
+    
+    
+    /** A label which can be shown without a window. */
+    public static class ShowingLabel extends JLabel {
+        private boolean showing;
+        
+        public ShowingLabel(String text) {
+            super(text);
+        }
+        
+        public boolean isShowing() {
+            return showing;
+        }
+        
+        void setShowing(boolean showing) {
+            this.showing = showing;
+            setVisible(showing);
+            fireShowingChanged(this);
+        }
+    }
+    
+    
+    /** A panel which can be shown without a window. */
+    public static class ShowingPanel extends JPanel {
+        private boolean showing;
+        
+        public boolean isShowing() {
+            return showing;
+        }
+        
+        void setShowing(boolean showing) {
+            this.showing = showing;
+            setVisible(showing);
+            fireShowingChanged(this);
+        }
+    }
+    
+    
+    public static void main(String[] arg) throws Exception {
+        Stylesheet stylesheet = CSSParser.parse("JLabel { text: 'styled' }");
+        stylesheet.setLazy(true);
+        checkStyledOnShow(stylesheet);
+        checkShownWithoutWrapper(stylesheet);
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: hidden components styled when shown");
+    }
+    
+    
+    private static void checkStyledOnShow(Stylesheet stylesheet) {
+        JPanel root = new JPanel();
+        JLabel visible = new JLabel("x");
+        root.add(visible);
+        ShowingPanel hidden = new ShowingPanel();
+        hidden.setVisible(false);
+        JLabel descendent = new JLabel("x");
+        hidden.add(descendent);
+        root.add(hidden);
+        stylesheet.applyTo(root);
+        check(visible, "styled", "visible label");
+        check(descendent, "x", "label in a hidden panel");
+        hidden.setShowing(true);
+        check(descendent, "styled", "label in a hidden panel once shown");
+        if (isWaiting(hidden))
+            fail("panel still waiting to be shown after it was styled");
+    }
+    
+    
+    private static void checkShownWithoutWrapper(Stylesheet stylesheet) {
+        JPanel root = new JPanel();
+        JPanel panel = new JPanel();
+        root.add(panel);
+        ShowingLabel label = new ShowingLabel("x");
+        label.setVisible(false);
+        panel.add(label);
+        stylesheet.applyTo(root);
+        check(label, "x", "hidden label");
+        
+        // moved to a container which has never been styled
+        panel.remove(label);
+        JPanel unstyled = new JPanel();
+        unstyled.add(label);
+        label.setShowing(true);
+        check(label, "x", "label shown in an unstyled container");
+        if (!isWaiting(label))
+            fail("label shown in an unstyled container no longer waiting");
+        
+        label.setShowing(false);
+        root.add(unstyled);
+        check(label, "x", "hidden label in a newly styled container");
+        label.setShowing(true);
+        check(label, "styled", "label shown in a newly styled container");
+        if (isWaiting(label))
+            fail("label still waiting to be shown after it was styled");
+    }
+    
+    
+    private static void fireShowingChanged(Component component) {
+        component.dispatchEvent(new HierarchyEvent(component, 
+                HierarchyEvent.HIERARCHY_CHANGED, component, 
+                component.getParent(), HierarchyEvent.SHOWING_CHANGED));
+    }
+    
+    
+    private static boolean isWaiting(Component component) {
+        for (HierarchyListener l : component.getHierarchyListeners()) {
+            if (l instanceof LazyStyler)
+                return true;
+        }
+        return false;
+    }
+    
+    
+    private static void check(JLabel label, String expected, String what) {
+        if (!expected.equals(label.getText()))
+            fail(what + ": expected '" + expected + "', was '" + 
+                    label.getText() + "'");
+    }
+    
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.util.Random;
+
+/**
+ * Checks that packed priorities compare as numbers the same way as the 
+ * priorities' attributes compare one by one, for attributes within the 
+ * packed ranges, and that attributes beyond those ranges are packed as the 
+ * nearest value within them.  <code>Priority</code> objects keep 
+ * out-of-range attributes as given.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class PriorityTest {
+    private static final int PAIRS = 200000;
+    
+    // lowest and highest packable value of each attribute after important
+    private static final int[][] RANGES = {
+        { -1, 14 }, { -128, 127 }, { -1, 1022 }, { -1, 14 }, { -1, 14 }, 
+        { -1, 131070 }, { -1, Priority.MAX_ORDER }
+    };
+    
+    private static int failures;
+    
+    
+    public static void main(String[] arg) {
+        Random random = new Random(1);
+        for (int i = 0; i < PAIRS; i++) {
+            int[] a = random(random, false);
+            int[] b = random.nextInt(4) == 0 ? a.clone() : random(random, false);
+            for (int j = 0; j < a.length; j++) {
+                if (random.nextBoolean())
+                    b[j] = a[j];
+            }
+            int expected = Integer.signum(compareFields(a, b));
+            if (Long.signum(Long.compare(pack(a), pack(b))) != expected)
+                fail("packed " + priority(a) + " and " + priority(b) + 
+                        " compare differently from their attributes");
+            if (Integer.signum(priority(a).compareTo(priority(b))) != expected)
+                fail(priority(a) + ".compareTo(" + priority(b) + 
+                        ") differs from comparing attributes");
+            if (!new Priority(pack(a)).equals(priority(a)))
+                fail(priority(a) + " does not survive packing");
+        }
+        for (int i = 0; i < PAIRS; i++) {
+            int[] a = random(random, true);
+            int[] b = random(random, true);
+            int expected = Integer.signum(compareFields(saturate(a), 
+                    saturate(b)));
+            if (Long.signum(Long.compare(pack(a), pack(b))) != expected)
+                fail("packed " + priority(a) + " and " + priority(b) + 
+                        " compare differently from their saturated " +
+                        "attributes");
+        }
+        Priority unbounded = new Priority(false, 100, 1000, 5000, 20, 20, 
+                1 << 20, 1 << 20);
+        unbounded.setOrder(Integer.MAX_VALUE);
+        if (unbounded.getPseudoclassCount() != 100 || 
+                unbounded.getDepth() != 5000 || 
+                unbounded.getOrder() != Integer.MAX_VALUE)
+            fail("out-of-range attributes not kept: " + unbounded);
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: " + (PAIRS * 2) + " pairs of priorities");
+    }
+    
+    
+    /** 
+     * Returns random attributes, with the important flag first, drawn mostly 
+     * from the ends of their ranges so that ties are common.
+     */
+    private static int[] random(Random random, boolean overflow) {
+        int[] result = new int[RANGES.length + 1];
+        result[0] = random.nextInt(2);
+        for (int i = 0; i < RANGES.length; i++) {
+            int min = RANGES[i][0];
+            int max = RANGES[i][1];
+            switch (random.nextInt(overflow ? 5 : 4)) {
+                case 0: result[i + 1] = min; break;
+                case 1: result[i + 1] = max; break;
+                case 2: result[i + 1] = min + 1; break;
+                case 3: result[i + 1] = min + random.nextInt(max - min + 1); 
+                        break;
+                default: result[i + 1] = random.nextBoolean() ? 
+                        min - 1 - random.nextInt(1000) : 
+                        max + 1 + random.nextInt(1000);
+            }
+        }
+        return result;
+    }
+    
+    
+    private static int[] saturate(int[] a) {
+        int[] result = a.clone();
+        for (int i = 0; i < RANGES.length; i++)
+            result[i + 1] = Math.max(RANGES[i][0], Math.min(RANGES[i][1], 
+                    a[i + 1]));
+        return result;
+    }
+    
+    
+    private static Priority priority(int[] a) {
+        return new Priority(a[0] != 0, a[1], a[2], a[3], a[4], a[5], a[6], 
+                a[7]);
+    }
+    
+    
+    private static long pack(int[] a) {
+        return Priority.pack(a[0] != 0, a[1], a[2], a[3], a[4], a[5], a[6], 
+                a[7]);
+    }
+    
+    
+    /** The field-by-field ordering of the original Priority.compareTo. */
+    private static int compareFields(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int result = i == 3 ? b[i] - a[i] : a[i] - b[i];
+            if (result != 0)
+                return result;
+        }
+        return 0;
+    }
+    
+    
+    private static void fail(String message) {
+        if (failures++ < 20)
+            System.err.println(message);
+    }
+}
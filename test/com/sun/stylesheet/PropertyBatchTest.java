@@ -0,0 +1,184 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.awt.Color;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.sun.stylesheet.css.parser.CSSParser;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Checks that property writes are batched:  a component matched by several 
+ * rules setting the same property is written once, with the winning value;  
+ * writes inside a batch are visible through {@link 
+ * PropertyManager#getProperty} but not on the component until the outermost 
+ * batch ends.  Writes of the value a property already holds are skipped, 
+ * as long as the value was written by the stylesheet and is still in place.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class PropertyBatchTest {
+    private static int failures;
+    
+    
+    /** Counts writes to its text. */
+    public static class CountingLabel extends JLabel {
+        int writes;
+        
+        public void setText(String text) {
+            writes++;
+            super.setText(text);
+        }
+    }
+    
+    
+    public static void main(String[] arg) throws Exception {
+        checkSingleWrite();
+        checkPendingWrites();
+        checkSkippedWrites();
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: batched writes");
+    }
+    
+    
+    private static void checkSingleWrite() {
+        Stylesheet stylesheet = CSSParser.parse(
+                "JLabel { text: 'type' }\n" +
+                ".c { text: 'class' }\n" +
+                "JPanel JLabel.c { text: 'compound' }\n" +
+                "#n { text: 'id' }");
+        JPanel panel = new JPanel();
+        CountingLabel label = new CountingLabel();
+        label.setName("n");
+        label.putClientProperty(Stylesheet.STYLE_CLASS_KEY, "c");
+        panel.add(label);
+        label.writes = 0;
+        
+        stylesheet.applyTo(panel);
+        if (!"id".equals(label.getText()))
+            fail("expected the ID rule to win, was '" + label.getText() + "'");
+        if (label.writes != 1)
+            fail("four matching rules wrote text " + label.writes + " times");
+    }
+    
+    
+    private static void checkPendingWrites() {
+        Stylesheet stylesheet = CSSParser.parse(
+                "JLabel { text: 'first' }\n" +
+                "JLabel { text: 'second' }");
+        Rule first = stylesheet.getRules().get(0);
+        Rule second = stylesheet.getRules().get(1);
+        CountingLabel label = new CountingLabel();
+        label.setText("original");
+        label.writes = 0;
+        Styleable node = TypeManager.getStyleable(label);
+        Priority low = new Priority(false, 0, 0, 0, 0, 0, 0, 0);
+        Priority high = new Priority(false, 0, 0, 0, 1, 0, 0, 0);
+        
+        PropertyManager.beginBatch();
+        try {
+            PropertyManager.applyProperty(node, "text", "first", first, low, 
+                    null);
+            check(node, label, "first", "original", "after the first write");
+            PropertyManager.beginBatch();
+            try {
+                PropertyManager.applyProperty(node, "text", "second", second, 
+                        high, null);
+            }
+            finally {
+                PropertyManager.endBatch();
+            }
+            check(node, label, "second", "original", 
+                    "after a nested batch ended");
+        }
+        finally {
+            PropertyManager.endBatch();
+        }
+        check(node, label, "second", "second", "after the batch ended");
+        if (label.writes != 1)
+            fail("batch wrote text " + label.writes + " times");
+        
+        PropertyManager.removeProperty(node, "text", "second", second, high, 
+                null);
+        check(node, label, "first", "first", "after removing outside a batch");
+    }
+    
+    
+    private static void checkSkippedWrites() {
+        Stylesheet stylesheet = CSSParser.parse(
+                "JLabel { text: 'styled'; foreground: red }");
+        JPanel panel = new JPanel();
+        panel.setForeground(Color.RED);
+        CountingLabel label = new CountingLabel();
+        panel.add(label);
+        label.writes = 0;
+        
+        stylesheet.applyTo(panel);
+        // getForeground() already reports the panel's red, but the label 
+        // needs a foreground of its own
+        if (!label.isForegroundSet())
+            fail("foreground inherited from the parent was not written");
+        
+        long skipped = PropertyManager.getSkippedWriteCount();
+        stylesheet.reapply();
+        if (label.writes != 1)
+            fail("reapplying wrote unchanged text " + label.writes + 
+                    " times in all");
+        if (PropertyManager.getSkippedWriteCount() == skipped)
+            fail("reapplying skipped no writes");
+        
+        label.setText("changed");
+        label.writes = 0;
+        stylesheet.reapply();
+        if (!"styled".equals(label.getText()) || label.writes != 1)
+            fail("text changed behind the stylesheet's back was not " +
+                    "restyled, was '" + label.getText() + "'");
+    }
+    
+    
+    private static void check(Styleable node, JLabel label, String managed, 
+            String actual, String when) {
+        Object value = PropertyManager.getProperty(node, "text");
+        if (!managed.equals(value))
+            fail(when + ": getProperty expected '" + managed + "', was '" + 
+                    value + "'");
+        if (!actual.equals(label.getText()))
+            fail(when + ": label expected '" + actual + "', was '" + 
+                    label.getText() + "'");
+    }
+    
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.sun.stylesheet.css.parser.CSSParser;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Checks the rule index against a linear scan:  for randomly generated rules 
+ * and a randomly generated tree of components, every rule which matches a 
+ * component must be among the candidates the index returns for it.  Also 
+ * checks that the index does leave rules out, as it would be trivially 
+ * correct if it returned every rule.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class RuleIndexTest {
+    private static final String[] TYPES = { "JLabel", "JButton", "JPanel", 
+            "JCheckBox", "AbstractButton", "JComponent", "Component", "*" };
+    private static final String[] IDS = { "a", "b", "c" };
+    private static final String[] STYLE_CLASSES = { "red", "blue" };
+    private static final int RULES = 300;
+    
+    private static int failures;
+    
+    
+    public static void main(String[] arg) throws Exception {
+        Random random = new Random(1);
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < RULES; i++) {
+            css.append(selector(random));
+            if (random.nextInt(5) == 0)
+                css.append(", ").append(selector(random));
+            css.append(" { text: 'rule" + i + "' }\n");
+        }
+        Stylesheet stylesheet = CSSParser.parse(css.toString());
+        List<Rule> rules = stylesheet.getRules();
+        RuleIndex index = new RuleIndex(rules);
+        
+        JPanel root = new JPanel();
+        populate(root, random, 4);
+        List<Styleable> nodes = new ArrayList<Styleable>();
+        collect(TypeManager.getStyleable(root), nodes);
+        
+        long candidateCount = 0;
+        long matchCount = 0;
+        for (Styleable node : nodes) {
+            BitSet candidates = index.getCandidates(node);
+            candidateCount += candidates.cardinality();
+            for (int i = 0; i < rules.size(); i++) {
+                if (rules.get(i).matches(node) == null)
+                    continue;
+                matchCount++;
+                if (!candidates.get(i))
+                    fail("rule " + i + " " + Arrays.toString(rules.get(i)
+                            .getSelectors()) + " matches " + node + 
+                            " but is not a candidate");
+            }
+        }
+        if (matchCount == 0)
+            fail("no rule matched any node");
+        if (candidateCount >= (long) rules.size() * nodes.size())
+            fail("the index returned every rule for every node");
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: " + nodes.size() + " nodes, " + rules.size() + 
+                " rules, " + matchCount + " matches among " + candidateCount + 
+                " candidates");
+    }
+    
+    
+    private static String simpleSelector(Random random) {
+        StringBuilder result = new StringBuilder(
+                TYPES[random.nextInt(TYPES.length)]);
+        if (random.nextInt(3) == 0)
+            result.append('#').append(IDS[random.nextInt(IDS.length)]);
+        if (random.nextInt(3) == 0)
+            result.append('.').append(
+                    STYLE_CLASSES[random.nextInt(STYLE_CLASSES.length)]);
+        return result.toString();
+    }
+    
+    
+    private static String selector(Random random) {
+        StringBuilder result = new StringBuilder(simpleSelector(random));
+        for (int i = random.nextInt(3); i > 0; i--) {
+            result.append(random.nextBoolean() ? " > " : " ");
+            result.append(simpleSelector(random));
+        }
+        return result.toString();
+    }
+    
+    
+    private static void populate(Container parent, Random random, int depth) {
+        int count = 2 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            JComponent child;
+            switch (depth > 1 ? random.nextInt(6) : random.nextInt(3)) {
+                case 0: child = new JLabel(); break;
+                case 1: child = new JButton(); break;
+                case 2: child = new JCheckBox(); break;
+                default: child = new JPanel();
+            }
+            if (random.nextBoolean())
+                child.setName(IDS[random.nextInt(IDS.length)]);
+            if (random.nextBoolean())
+                child.putClientProperty(Stylesheet.STYLE_CLASS_KEY, 
+                        STYLE_CLASSES[random.nextInt(STYLE_CLASSES.length)]);
+            parent.add(child);
+            if (child instanceof JPanel)
+                populate(child, random, depth - 1);
+        }
+    }
+    
+    
+    private static void collect(Styleable node, List<Styleable> nodes) {
+        nodes.add(node);
+        Styleable[] children = node.getStyleableChildren();
+        if (children != null) {
+            for (Styleable child : children)
+                collect(child, nodes);
+        }
+    }
+    
+    
+    private static void fail(String message) {
+        if (failures++ < 20)
+            System.err.println(message);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+
+import com.sun.stylesheet.css.parser.CSSParser;
+
+/**
+ * Checks that siblings which share rule matches are still styled by their 
+ * own pseudoclass state.  Buttons which differ only in whether they are 
+ * armed share matches, yet each must show the value for its own state, 
+ * both initially and as the state changes.  A sibling with a different 
+ * style class must not share.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class StyleSharingTest {
+    private static final int BUTTONS = 8;
+    
+    private static int failures;
+    
+    
+    public static void main(String[] arg) throws Exception {
+        Stylesheet stylesheet = CSSParser.parse(
+                "JButton { text: 'plain' }\n" +
+                "JButton:armed { text: 'armed' }\n" +
+                ".special { text: 'special' }");
+        JPanel panel = new JPanel();
+        JButton[] buttons = new JButton[BUTTONS];
+        for (int i = 0; i < BUTTONS; i++) {
+            buttons[i] = new JButton("x");
+            if (i % 2 == 1)
+                buttons[i].getModel().setArmed(true);
+            panel.add(buttons[i]);
+        }
+        JButton special = new JButton("x");
+        special.putClientProperty(Stylesheet.STYLE_CLASS_KEY, "special");
+        panel.add(special);
+        
+        stylesheet.applyTo(panel);
+        
+        if (stylesheet.getStyleSharingHits() < BUTTONS - 1)
+            fail("expected at least " + (BUTTONS - 1) + " sharing hits, " +
+                    "was " + stylesheet.getStyleSharingHits());
+        check(buttons, special, "applied");
+        
+        // changes off the event dispatch thread take effect immediately
+        for (int i = 0; i < BUTTONS; i++)
+            buttons[i].getModel().setArmed(i % 3 == 0);
+        check(buttons, special, "rearmed");
+        for (JButton button : buttons)
+            button.getModel().setArmed(false);
+        check(buttons, special, "disarmed");
+        
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: " + stylesheet.getStyleSharingHits() + 
+                " sharing hits, " + stylesheet.getStyleSharingMisses() + 
+                " misses");
+    }
+    
+    
+    private static void check(JButton[] buttons, JButton special, 
+            String when) {
+        for (int i = 0; i < buttons.length; i++) {
+            String expected = buttons[i].getModel().isArmed() ? "armed" : 
+                    "plain";
+            if (!expected.equals(buttons[i].getText()))
+                fail(when + ": button " + i + " expected '" + expected + 
+                        "', was '" + buttons[i].getText() + "'");
+        }
+        if (!"special".equals(special.getText()))
+            fail(when + ": special button was '" + special.getText() + "'");
+    }
+    
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+}
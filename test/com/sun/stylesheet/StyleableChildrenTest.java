@@ -0,0 +1,124 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.sun.stylesheet.styleable.DefaultStyleable;
+import com.sun.stylesheet.swing.ComponentStyleSupport;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Checks which children traversals see.  A <code>StyleSupport</code> which 
+ * overrides only <code>getStyleableChildren</code> must have its children 
+ * read through that method, even though the class it extends implements the 
+ * indexed methods;  one which implements all three is read through the 
+ * indexed methods.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class StyleableChildrenTest {
+    private static int failures;
+
+
+    /** A panel whose hidden children are not styled. */
+    public static class FilteringPanel extends JPanel {
+    }
+
+
+    /** Overrides only the array form, leaving the inherited indexed pair. */
+    public static class FilteringStyleSupport extends ComponentStyleSupport {
+        public FilteringStyleSupport(Class cls) {
+            super(cls);
+        }
+
+
+        public Styleable[] getStyleableChildren(Object object) {
+            List<Styleable> result = new ArrayList<Styleable>();
+            for (Component child : ((JPanel) object).getComponents()) {
+                if (child.isVisible())
+                    result.add(TypeManager.getStyleable(child));
+            }
+            return result.toArray(new Styleable[result.size()]);
+        }
+    }
+
+
+    public static void main(String[] arg) throws Exception {
+        TypeManager.registerStyleSupport(FilteringPanel.class, 
+                FilteringStyleSupport.class);
+
+        JPanel panel = new JPanel();
+        FilteringPanel filtering = new FilteringPanel();
+        for (int i = 0; i < 4; i++) {
+            JLabel label = new JLabel(String.valueOf(i));
+            label.setVisible(i % 2 == 0);
+            filtering.add(label);
+            panel.add(new JLabel(String.valueOf(i)));
+        }
+
+        List<Styleable> children = StyleableChildren.of(
+                TypeManager.getStyleable(filtering));
+        if (children instanceof StyleableChildren)
+            fail("overridden getStyleableChildren read through indexed methods");
+        if (children.size() != 2)
+            fail("expected 2 visible children, was " + children.size());
+        for (Styleable child : children) {
+            Object object = ((DefaultStyleable) child).getBaseObject();
+            if (!((Component) object).isVisible())
+                fail("hidden child " + child + " was traversed");
+        }
+
+        children = StyleableChildren.of(TypeManager.getStyleable(panel));
+        if (!(children instanceof StyleableChildren))
+            fail("ComponentStyleSupport not read through indexed methods");
+        if (children.size() != 4)
+            fail("expected 4 children, was " + children.size());
+        for (int i = 0; i < children.size(); i++) {
+            Object object = ((DefaultStyleable) children.get(i))
+                    .getBaseObject();
+            if (object != panel.getComponent(i))
+                fail("child " + i + " does not match the panel's");
+        }
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: children of overriding and indexed supports");
+    }
+
+
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.css;
+
+import java.awt.Container;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.sun.stylesheet.Rule;
+import com.sun.stylesheet.Selector;
+import com.sun.stylesheet.Styleable;
+import com.sun.stylesheet.Stylesheet;
+import com.sun.stylesheet.css.parser.CSSParser;
+import com.sun.stylesheet.types.TypeManager;
+
+/**
+ * Checks that the ancestor filter has no false negatives.  The filter is 
+ * maintained over a random tree of components the way stylesheets maintain 
+ * it, and at every node must report each ID, style class and Java class name 
+ * of every ancestor as possibly present.  Descendant and child selectors must 
+ * match exactly the same nodes with the filter as without it.  Also checks 
+ * that the filter does reject some absent keys, and that it is empty once 
+ * the traversal is complete.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class AncestorFilterTest {
+    private static final int IDS = 40;
+    private static final int STYLE_CLASSES = 40;
+    
+    private static int failures;
+    private static int rejected;
+    private static int absent;
+    
+    
+    public static void main(String[] arg) throws Exception {
+        Random random = new Random(1);
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            css.append(simpleSelector(random));
+            for (int j = 1 + random.nextInt(2); j > 0; j--) {
+                css.append(random.nextBoolean() ? " > " : " ");
+                css.append(simpleSelector(random));
+            }
+            css.append(" { text: 'rule" + i + "' }\n");
+        }
+        List<CompoundSelector> selectors = new ArrayList<CompoundSelector>();
+        for (Rule rule : CSSParser.parse(css.toString()).getRules()) {
+            for (Selector selector : rule.getSelectors())
+                selectors.add((CompoundSelector) selector);
+        }
+        
+        JPanel root = new JPanel();
+        populate(root, random, 6);
+        Styleable rootNode = TypeManager.getStyleable(root);
+        
+        // the unfiltered results, with the filter prepared for no node
+        AncestorFilter filter = AncestorFilter.getInstance();
+        filter.clear();
+        Map<Styleable, boolean[]> expected = 
+                new IdentityHashMap<Styleable, boolean[]>();
+        collect(rootNode, selectors, expected);
+        
+        int matches = check(filter, rootNode, null, 
+                new ArrayList<Styleable>(), selectors, expected);
+        
+        List<Integer> keys = new ArrayList<Integer>();
+        keys(rootNode, keys);
+        for (int key : keys) {
+            if (filter.mightContainAll(new int[] { key }))
+                fail("filter not empty after the traversal");
+        }
+        if (matches == 0)
+            fail("no selector matched any node");
+        if (rejected == 0)
+            fail("the filter rejected none of " + absent + " absent keys");
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: " + expected.size() + " nodes, " + 
+                selectors.size() + " selectors, " + matches + " matches, " + 
+                rejected + " of " + absent + " absent keys rejected");
+    }
+    
+    
+    private static String simpleSelector(Random random) {
+        switch (random.nextInt(4)) {
+            case 0: return "#id" + random.nextInt(IDS);
+            case 1: return ".class" + random.nextInt(STYLE_CLASSES);
+            case 2: return random.nextBoolean() ? "JPanel" : "JComponent";
+            default: return random.nextBoolean() ? "JLabel" : "JButton";
+        }
+    }
+    
+    
+    private static void populate(Container parent, Random random, int depth) {
+        int count = 2 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            JComponent child;
+            int type = random.nextInt(depth > 1 ? 4 : 2);
+            if (type == 0)
+                child = new JLabel();
+            else if (type == 1)
+                child = new JButton();
+            else
+                child = new JPanel();
+            if (random.nextInt(3) == 0)
+                child.setName("id" + random.nextInt(IDS));
+            if (random.nextInt(3) == 0)
+                child.putClientProperty(Stylesheet.STYLE_CLASS_KEY, 
+                        "class" + random.nextInt(STYLE_CLASSES));
+            parent.add(child);
+            if (child instanceof JPanel)
+                populate(child, random, depth - 1);
+        }
+    }
+    
+    
+    private static Styleable[] children(Styleable node) {
+        Styleable[] children = node.getStyleableChildren();
+        return children != null ? children : new Styleable[0];
+    }
+    
+    
+    private static void collect(Styleable node, 
+            List<CompoundSelector> selectors, 
+            Map<Styleable, boolean[]> results) {
+        boolean[] result = new boolean[selectors.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = selectors.get(i).matches(node) != null;
+        results.put(node, result);
+        for (Styleable child : children(node))
+            collect(child, selectors, results);
+    }
+    
+    
+    /** Adds the filter keys of a node. */
+    private static void keys(Styleable node, List<Integer> keys) {
+        if (node.getID() != null)
+            keys.add(AncestorFilter.idKey(node.getID()));
+        if (node.getStyleClass() != null)
+            keys.add(AncestorFilter.styleClassKey(node.getStyleClass()));
+        for (Class c : node.getObjectClasses()) {
+            for (; c != null; c = c.getSuperclass()) {
+                String name = c.getName();
+                keys.add(AncestorFilter.javaClassKey(name));
+                keys.add(AncestorFilter.javaClassKey(
+                        name.substring(name.lastIndexOf('.') + 1)));
+            }
+        }
+    }
+    
+    
+    /** 
+     * Visits the tree as stylesheets do, checking each node, and returns 
+     * the number of matches.
+     */
+    private static int check(AncestorFilter filter, Styleable node, 
+            Styleable parent, List<Styleable> ancestors, 
+            List<CompoundSelector> selectors, 
+            Map<Styleable, boolean[]> expected) {
+        filter.prepare(node, parent);
+        
+        List<Integer> present = new ArrayList<Integer>();
+        for (Styleable ancestor : ancestors)
+            keys(ancestor, present);
+        for (int key : present) {
+            if (!filter.mightContainAll(new int[] { key }))
+                fail("ancestor key missing from the filter at " + node);
+        }
+        for (int i = 0; i < IDS; i++) {
+            int key = AncestorFilter.idKey("id" + i);
+            if (!present.contains(key)) {
+                absent++;
+                if (!filter.mightContainAll(new int[] { key }))
+                    rejected++;
+            }
+        }
+        
+        int matches = 0;
+        boolean[] result = expected.get(node);
+        for (int i = 0; i < result.length; i++) {
+            boolean match = selectors.get(i).matches(node) != null;
+            if (match != result[i])
+                fail(selectors.get(i) + (match ? " matches " : 
+                        " does not match ") + node + " with the filter");
+            if (match)
+                matches++;
+        }
+        
+        Styleable[] children = children(node);
+        if (children.length > 0) {
+            filter.push(node, parent);
+            ancestors.add(node);
+            for (Styleable child : children)
+                matches += check(filter, child, node, ancestors, selectors, 
+                        expected);
+            ancestors.remove(ancestors.size() - 1);
+            filter.pop(node);
+        }
+        return matches;
+    }
+    
+    
+    private static void fail(String message) {
+        if (failures++ < 20)
+            System.err.println(message);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import com.sun.stylesheet.Stylesheet;
+import com.sun.stylesheet.css.parser.CSSParser;
+
+/**
+ * Checks when components added to styled containers are styled.  Children 
+ * added on the event dispatch thread are styled once the current event has 
+ * been processed, or as soon as {@link 
+ * ComponentStyleSupport#flushPendingStyling} is called, so that sizes 
+ * computed before <code>pack()</code> can include their styles.  Children 
+ * added from other threads are styled immediately.
+ * <p>
+ * Also checks deferred styling:  nested deferrals of a container or of one 
+ * of its ancestors hold children back until the outermost one is resumed, 
+ * closing a deferral resumes it, and resuming it again has no effect.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class ContainerStylingTest {
+    private static final String STYLED = "a considerably longer styled text";
+    
+    private static int failures;
+    
+    
+    public static void main(String[] arg) throws Exception {
+        final Stylesheet stylesheet = CSSParser.parse(
+                "JLabel { text: '" + STYLED + "' }");
+        checkOffEventThread(stylesheet);
+        checkDelayedOnEventThread(stylesheet);
+        checkFlush(stylesheet);
+        checkNestedDeferral(stylesheet);
+        checkDeferredAncestor(stylesheet);
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: children styled off the EDT, after the " +
+                "event, on flush, and after deferral");
+    }
+    
+    
+    private static void checkOffEventThread(Stylesheet stylesheet) {
+        JPanel panel = new JPanel();
+        stylesheet.applyTo(panel);
+        JLabel label = new JLabel("x");
+        panel.add(label);
+        check(label, STYLED, "child added off the EDT");
+    }
+    
+    
+    private static void checkDelayedOnEventThread(final Stylesheet stylesheet) 
+            throws Exception {
+        final JLabel label = new JLabel("x");
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                JPanel panel = new JPanel();
+                stylesheet.applyTo(panel);
+                panel.add(label);
+                check(label, "x", "child added on the EDT, same event");
+            }
+        });
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                check(label, STYLED, "child added on the EDT, next event");
+            }
+        });
+    }
+    
+    
+    private static void checkFlush(final Stylesheet stylesheet) 
+            throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                JPanel panel = new JPanel();
+                stylesheet.applyTo(panel);
+                JLabel label = new JLabel("x");
+                panel.add(label);
+                int unstyled = panel.getPreferredSize().width;
+                ComponentStyleSupport.flushPendingStyling();
+                check(label, STYLED, "child added on the EDT, flushed");
+                if (panel.getPreferredSize().width <= unstyled)
+                    fail("preferred size after flush does not include styles");
+            }
+        });
+    }
+    
+    
+    private static void checkNestedDeferral(Stylesheet stylesheet) {
+        JPanel panel = new JPanel();
+        stylesheet.applyTo(panel);
+        ComponentStyleSupport.Deferral outer = 
+                ComponentStyleSupport.deferStyling(panel);
+        JLabel label = new JLabel("x");
+        try (ComponentStyleSupport.Deferral inner = 
+                ComponentStyleSupport.deferStyling(panel)) {
+            panel.add(label);
+            check(label, "x", "child added within nested deferrals");
+        }
+        check(label, "x", "child after the inner deferral was closed");
+        outer.resume();
+        check(label, STYLED, "child after the outer deferral was resumed");
+        outer.resume();
+        outer.close();
+        JLabel later = new JLabel("x");
+        panel.add(later);
+        check(later, STYLED, "child added after the deferral was resumed " + 
+                "twice");
+    }
+    
+    
+    private static void checkDeferredAncestor(Stylesheet stylesheet) {
+        JPanel root = new JPanel();
+        JPanel inner = new JPanel();
+        root.add(inner);
+        stylesheet.applyTo(root);
+        ComponentStyleSupport.Deferral outer = 
+                ComponentStyleSupport.deferStyling(root);
+        ComponentStyleSupport.Deferral nested = 
+                ComponentStyleSupport.deferStyling(inner);
+        JLabel deep = new JLabel("x");
+        inner.add(deep);
+        JLabel shallow = new JLabel("x");
+        root.add(shallow);
+        nested.resume();
+        check(deep, "x", "child of a nested container while its ancestor " + 
+                "is deferred");
+        check(shallow, "x", "child of a deferred container");
+        outer.resume();
+        check(deep, STYLED, "child of a nested container after its " + 
+                "ancestor was resumed");
+        check(shallow, STYLED, "child of a container after it was resumed");
+        nested.resume();
+        JLabel later = new JLabel("x");
+        inner.add(later);
+        check(later, STYLED, "child added after both deferrals ended");
+    }
+    
+    
+    private static void check(JLabel label, String expected, String what) {
+        if (!expected.equals(label.getText()))
+            fail(what + ": expected '" + expected + "', was '" + 
+                    label.getText() + "'");
+    }
+    
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JTextField;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.jdesktop.beansbinding.ELProperty;
+
+/**
+ * Checks compiled pseudoclass expressions against the results the
+ * expression language gives for them:  numbers compared with strings, enums,
+ * <code>null</code>, the logical operators, and expressions outside of the
+ * supported subset, which must not compile.  If Beans Binding is available,
+ * each expression is also evaluated through it and the results compared.
+ * <p>
+ * Also generates and compiles a <code>StyleSupport</code> for
+ * <code>JTextField</code>, which has no <code>addChangeListener</code>, and
+ * checks that expressions over its properties still compile.
+ * <p>
+ * Run with the library on the class path and a JDK (not just a JRE);  the
+ * exit status is non-zero if any check fails.
+ */
+public class PropertyPredicateTest {
+    /** Expressions and the values the expression language gives them. */
+    private static final Object[][] EXPRESSIONS = {
+        { "number == 10", true },
+        { "number == 10.0", true },
+        { "number == '10'", true },
+        { "'10' == number", true },
+        { "number < '9'", false },
+        { "number >= 10", true },
+        { "ratio > 2", true },
+        { "ratio == '2.5'", true },
+        { "text == 'abc'", true },
+        { "text < 'abd'", true },
+        { "text != \"abc\"", false },
+        { "state == 'RUNNABLE'", true },
+        { "'RUNNABLE' == state", true },
+        { "state eq 'BLOCKED'", false },
+        { "flag == 'true'", true },
+        { "missing == null", true },
+        { "missing != null", false },
+        { "missing <= null", true },
+        { "missing >= null", true },
+        { "missing < null", false },
+        { "missing > 'a'", false },
+        { "missing le 'a'", false },
+        { "flag && number gt 5", true },
+        { "flag and not (number lt 5)", true },
+        { "!flag || ratio ge 2.5", true },
+        { "not flag or text eq 'x'", false },
+        { "(number == 10) == flag", true }
+    };
+
+    /** Expressions which must be left to Beans Binding. */
+    private static final String[] UNSUPPORTED = {
+        "number + 1 > 2",
+        "text.length > 2",
+        "empty text",
+        "unknown == 1",
+        "flag ? 1 : 2",
+        "number div 2 == 5",
+        "'unterminated"
+    };
+
+    private static int failures;
+
+
+    public static class Bean {
+        private final PropertyChangeSupport changes =
+                new PropertyChangeSupport(this);
+
+        public int getNumber() { return 10; }
+        public double getRatio() { return 2.5; }
+        public String getText() { return "abc"; }
+        public Thread.State getState() { return Thread.State.RUNNABLE; }
+        public boolean isFlag() { return true; }
+        public String getMissing() { return null; }
+
+        public void addPropertyChangeListener(PropertyChangeListener l) {
+            changes.addPropertyChangeListener(l);
+        }
+
+        public void removePropertyChangeListener(PropertyChangeListener l) {
+            changes.removePropertyChangeListener(l);
+        }
+
+        public void addPropertyChangeListener(String name,
+                PropertyChangeListener l) {
+            changes.addPropertyChangeListener(name, l);
+        }
+
+        public void removePropertyChangeListener(String name,
+                PropertyChangeListener l) {
+            changes.removePropertyChangeListener(name, l);
+        }
+    }
+
+
+    public static void main(String[] arg) throws Exception {
+        checkExpressions();
+        checkGeneratedSupport();
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: " + (EXPRESSIONS.length +
+                UNSUPPORTED.length) + " expressions");
+    }
+
+
+    private static void checkExpressions() throws Exception {
+        BeanStyleSupport support = new BeanStyleSupport(Bean.class);
+        Bean bean = new Bean();
+        boolean el = isBeansBindingAvailable();
+        if (!el)
+            System.out.println("Beans Binding not found;  checking against " +
+                    "expected values only");
+        for (Object[] test : EXPRESSIONS) {
+            String expression = (String) test[0];
+            PropertyPredicate predicate = PropertyPredicate.compile(expression,
+                    support);
+            if (predicate == null) {
+                fail(expression + ": did not compile");
+                continue;
+            }
+            boolean result = predicate.evaluate(bean);
+            if (result != (Boolean) test[1])
+                fail(expression + ": expected " + test[1] + ", was " + result);
+            if (el) {
+                Object expected = evaluateEL(expression, bean);
+                if (!Boolean.valueOf(result).equals(expected))
+                    fail(expression + ": EL gives " + expected + ", was " +
+                            result);
+            }
+        }
+        for (String expression : UNSUPPORTED) {
+            if (PropertyPredicate.compile(expression, support) != null)
+                fail(expression + ": should not have compiled");
+        }
+    }
+
+
+    private static boolean isBeansBindingAvailable() {
+        try {
+            Class.forName("org.jdesktop.beansbinding.ELProperty");
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+
+    private static Object evaluateEL(String expression, Object bean) {
+        return ELProperty.create("${" + expression + "}").getValue(bean);
+    }
+
+
+    /**
+     * Checks that generated descriptors are bound, as predicates on classes
+     * without <code>addChangeListener</code> need them to be.
+     */
+    private static void checkGeneratedSupport() throws Exception {
+        File dir = Files.createTempDirectory("generated").toFile();
+        try {
+            List<Class> classes = new ArrayList<Class>();
+            classes.add(JTextField.class);
+            StyleSupportGenerator.generate(classes,
+                    StyleSupportGenerator.DEFAULT_PACKAGE, dir);
+            String name = StyleSupportGenerator.DEFAULT_PACKAGE +
+                    ".JTextFieldStyleSupport";
+            File source = new File(dir, name.replace('.', File.separatorChar)
+                    + ".java");
+
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null)
+                throw new IllegalStateException("no system Java compiler");
+            if (compiler.run(null, null, null, "-nowarn", "-classpath",
+                    System.getProperty("java.class.path"), "-d",
+                    dir.getPath(), source.getPath()) != 0) {
+                fail("generated JTextField support does not compile");
+                return;
+            }
+
+            URLClassLoader loader = new URLClassLoader(
+                    new URL[] { dir.toURI().toURL() },
+                    PropertyPredicateTest.class.getClassLoader());
+            try {
+                BeanStyleSupport support = (BeanStyleSupport)
+                        loader.loadClass(name).getConstructor(Class.class)
+                            .newInstance(JTextField.class);
+                String expression = "editable && enabled";
+                PropertyPredicate predicate = PropertyPredicate.compile(
+                        expression, support);
+                if (predicate == null) {
+                    fail(expression + ": did not compile for generated " +
+                            "JTextField support");
+                    return;
+                }
+                JTextField field = new JTextField();
+                if (!predicate.evaluate(field))
+                    fail(expression + ": expected true for a new field");
+                field.setEditable(false);
+                if (predicate.evaluate(field))
+                    fail(expression + ": expected false once not editable");
+                // text changes are not reported, so it cannot be watched
+                if (PropertyPredicate.compile("text == 'x'", support) != null)
+                    fail("text == 'x': should not have compiled for " +
+                            "JTextField");
+            }
+            finally {
+                loader.close();
+            }
+        }
+        finally {
+            delete(dir);
+        }
+    }
+
+
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import javax.swing.ButtonModel;
+import javax.swing.JButton;
+import javax.swing.SwingUtilities;
+
+import com.sun.stylesheet.Stylesheet;
+import com.sun.stylesheet.css.parser.CSSParser;
+
+/**
+ * Checks that pseudoclass changes made on the event dispatch thread are 
+ * coalesced:  a component whose state changes several times during one 
+ * event is restyled once, after the event, to match its final state, and 
+ * not at all if it ends up in the state it started in.  Changes made from 
+ * other threads are applied immediately.
+ * <p>
+ * Run with the library on the class path;  the exit status is non-zero if 
+ * any check fails.
+ */
+public class PseudoclassCoalescingTest {
+    private static int failures;
+    
+    
+    /** Counts writes to its text. */
+    public static class CountingButton extends JButton {
+        int writes;
+        
+        public CountingButton(String text) {
+            super(text);
+        }
+        
+        public void setText(String text) {
+            writes++;
+            super.setText(text);
+        }
+    }
+    
+    
+    public static void main(String[] arg) throws Exception {
+        Stylesheet stylesheet = CSSParser.parse(
+                "JButton:armed { text: 'armed' }");
+        final CountingButton button = new CountingButton("button");
+        stylesheet.applyTo(button);
+        final ButtonModel model = button.getModel();
+        button.writes = 0;
+        
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.setArmed(true);
+                model.setArmed(false);
+                model.setArmed(true);
+                check(button, "button", 0, "armed three times, same event");
+            }
+        });
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                check(button, "armed", 1, "armed three times, next event");
+            }
+        });
+        
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.setArmed(false);
+                model.setArmed(true);
+            }
+        });
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                check(button, "armed", 1, "disarmed and rearmed, next event");
+            }
+        });
+        
+        model.setArmed(false);
+        check(button, "button", 2, "disarmed off the EDT");
+        
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK: pseudoclass changes coalesced");
+    }
+    
+    
+    private static void check(CountingButton button, String expected, 
+            int writes, String what) {
+        if (!expected.equals(button.getText()))
+            fail(what + ": expected '" + expected + "', was '" + 
+                    button.getText() + "'");
+        if (button.writes != writes)
+            fail(what + ": expected " + writes + " writes, was " + 
+                    button.writes);
+    }
+    
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        failures++;
+    }
+}
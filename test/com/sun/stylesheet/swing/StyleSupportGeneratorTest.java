@@ -0,0 +1,102 @@
+/*
+ * Copyright 2008 Sun Microsystems, Inc.  All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
+ * CA 95054 USA or visit www.sun.com if you need additional information or
+ * have any questions.
+ */
+
+
+package com.sun.stylesheet.swing;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JEditorPane;
+import javax.swing.JInternalFrame;
+import javax.swing.JLabel;
+import javax.swing.JSlider;
+import javax.swing.JTable;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates <code>StyleSupport</code> classes for a few stock Swing classes 
+ * and compiles them.  <code>JEditorPane</code> and 
+ * <code>JInternalFrame</code> are included because some of their accessors 
+ * declare checked exceptions.
+ * <p>
+ * Run with the library on the class path and a JDK (not just a JRE);  the 
+ * exit status is non-zero if the generated sources fail to compile.
+ */
+public class StyleSupportGeneratorTest {
+    private static final Class[] CLASSES = { JButton.class, JLabel.class, 
+            JSlider.class, JTable.class, JEditorPane.class, 
+            JInternalFrame.class };
+    
+    
+    public static void main(String[] arg) throws Exception {
+        File dir = Files.createTempDirectory("generated").toFile();
+        try {
+            StyleSupportGenerator.generate(Arrays.asList(CLASSES), 
+                    StyleSupportGenerator.DEFAULT_PACKAGE, dir);
+            
+            List<String> args = new ArrayList<String>();
+            args.add("-nowarn");
+            args.add("-classpath");
+            args.add(System.getProperty("java.class.path"));
+            args.add("-d");
+            args.add(dir.getPath());
+            File packageDir = new File(dir, 
+                    StyleSupportGenerator.DEFAULT_PACKAGE.replace('.', 
+                        File.separatorChar));
+            for (File f : packageDir.listFiles()) {
+                if (f.getName().endsWith(".java"))
+                    args.add(f.getPath());
+            }
+            
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null)
+                throw new IllegalStateException("no system Java compiler");
+            if (compiler.run(null, null, null, 
+                    args.toArray(new String[args.size()])) != 0) {
+                System.err.println("FAILED: generated sources do not compile");
+                System.exit(1);
+            }
+            System.out.println("OK: compiled " + CLASSES.length + 
+                    " generated classes");
+        }
+        finally {
+            delete(dir);
+        }
+    }
+    
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+}